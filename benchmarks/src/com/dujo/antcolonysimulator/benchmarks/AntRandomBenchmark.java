@@ -0,0 +1,46 @@
+package com.dujo.antcolonysimulator.benchmarks;
+
+import com.dujo.antcolonysimulator.ant.AntPopulation;
+import com.dujo.antcolonysimulator.ant.AntRandom;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of random number draws of ants on every available thread, Math.random shares one
+ * generator between all threads while every ant has its own AntRandom stream
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+public class AntRandomBenchmark {
+    static final int ANT_COUNT = 1024;
+
+    AntPopulation population;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        population = new AntPopulation(ANT_COUNT, System.identityHashCode(this));
+        for(int i = 0; i < ANT_COUNT; ++i)
+            population.addAnt(0f, 0f, 0f);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANT_COUNT)
+    public float sharedMathRandom(){
+        float sum = 0f;
+        for(int i = 0; i < ANT_COUNT; ++i)
+            sum += (float) Math.random();
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANT_COUNT)
+    public float perAntStreams(){
+        float sum = 0f;
+        for(int i = 0; i < ANT_COUNT; ++i)
+            sum += AntRandom.nextFloat(population, i);
+        return sum;
+    }
+}
@@ -0,0 +1,66 @@
+package com.dujo.antcolonysimulator.benchmarks;
+
+import com.dujo.antcolonysimulator.ant.Ant;
+import com.dujo.antcolonysimulator.ant.AntGoal;
+import com.dujo.antcolonysimulator.ant.AntPopulation;
+import com.dujo.antcolonysimulator.ant.SensingMode;
+import com.dujo.antcolonysimulator.colony.Colony;
+import com.dujo.antcolonysimulator.colony.WorldEditBuffer;
+import com.dujo.antcolonysimulator.world.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.geom.Point2D;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of stepping single ants spread over the world, grouped by the goal they start with
+ * and by how they sense pheromones
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AntUpdateBenchmark {
+    static final int ANT_COUNT = 1024;
+
+    @Param({"LOOK_FOR_FOOD", "RETURN_TO_COLONY", "REPEL_FROM_TRAIL"})
+    AntGoal goal;
+
+    @Param({"SAMPLED", "STENCIL", "SUMMED_AREA"})
+    SensingMode sensingMode;
+
+    World world;
+    Colony colony;
+    Ant ant;
+    WorldEditBuffer editBuffer;
+
+    @Setup(Level.Trial)
+    public void setupWorld(){
+        world = BenchmarkWorlds.createClutteredWorld(600);
+        BenchmarkWorlds.addFoodAndPheromones(world, 0.2f);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupAnts(){
+        // Ants drift during an iteration, start every iteration from the same spread out state
+        colony = new Colony(0, new Point2D.Float(300f, 300f), world, 0);
+        AntPopulation population = new AntPopulation(ANT_COUNT);
+
+        float[] points = BenchmarkWorlds.getFreePoints(world, ANT_COUNT);
+        for(int i = 0; i < ANT_COUNT; ++i){
+            population.addAnt(points[i * 2], points[i * 2 + 1], i);
+            population.setGoal(i, goal);
+        }
+
+        ant = new Ant(population, world, colony);
+        ant.setSensingMode(sensingMode);
+        // Colonies rebuild the summed area tables before stepping, here only once per iteration
+        world.updateSummedAreaTables();
+        editBuffer = new WorldEditBuffer(world, colony, population, false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANT_COUNT)
+    public void update(){
+        ant.update(0, ANT_COUNT, 1f / 60f, editBuffer);
+    }
+}
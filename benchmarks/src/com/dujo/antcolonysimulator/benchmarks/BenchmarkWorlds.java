@@ -0,0 +1,96 @@
+package com.dujo.antcolonysimulator.benchmarks;
+
+import com.dujo.antcolonysimulator.ant.AntPheromone;
+import com.dujo.antcolonysimulator.world.World;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+/**
+ * Class that builds the worlds used by the benchmarks, maps are generated from a fixed seed so
+ * benchmarks don't depend on the working directory
+ */
+final class BenchmarkWorlds {
+    static final long SEED = 42L;
+
+    private BenchmarkWorlds(){
+    }
+
+    static World createOpenWorld(int size){
+        return new World(size, size, 1);
+    }
+
+    /**
+     * Method that creates a world filled with random wall blocks
+     *
+     * @param size number of rows and columns
+     * @return created world
+     */
+    static World createClutteredWorld(int size){
+        World world = new World(size, size, 1);
+        Random random = new Random(SEED);
+
+        for(int i = 0; i < size * size / 400; ++i)
+            world.setWall(
+                    new Point2D.Float(random.nextFloat() * size, random.nextFloat() * size),
+                    2 + random.nextInt(8)
+            );
+
+        return world;
+    }
+
+    /**
+     * Method that places food in the middle of the world and spreads pheromones over a share of
+     * the cells of every colony
+     *
+     * @param world world to fill
+     * @param coverage share of cells with pheromones
+     */
+    static void addFoodAndPheromones(World world, float coverage){
+        Random random = new Random(SEED);
+
+        world.setFood(
+                new Point2D.Float(world.getColumnCount() * 0.75f, world.getRowCount() * 0.75f),
+                20,
+                world.getColumnCount() / 10f
+        );
+
+        int pheromoneCellCount = (int) (world.getCellCount() * coverage);
+        for(int i = 0; i < pheromoneCellCount; ++i){
+            int cellIndex = world.getCellIndex(random.nextInt(world.getRowCount()), random.nextInt(world.getColumnCount()));
+            AntPheromone pheromone = AntPheromone.values()[random.nextInt(AntPheromone.values().length)];
+            world.setPheromoneOnCell(
+                    cellIndex,
+                    pheromone,
+                    random.nextFloat() * World.MAX_PHEROMONE_INTENSITY,
+                    random.nextInt(World.MAX_COLONY_COUNT)
+            );
+        }
+    }
+
+    /**
+     * Method that finds random points that are not inside walls
+     *
+     * @param world world to find the points in
+     * @param count number of points
+     * @return x and y coordinates of the points, interleaved
+     */
+    static float[] getFreePoints(World world, int count){
+        Random random = new Random(SEED);
+        float[] points = new float[count * 2];
+
+        for(int i = 0; i < count; ++i){
+            float x;
+            float y;
+            do {
+                x = random.nextFloat() * world.getColumnCount() * world.getCellSize();
+                y = random.nextFloat() * world.getRowCount() * world.getCellSize();
+            } while (world.isWall(world.getCellIndex(x, y)));
+
+            points[i * 2] = x;
+            points[i * 2 + 1] = y;
+        }
+
+        return points;
+    }
+}
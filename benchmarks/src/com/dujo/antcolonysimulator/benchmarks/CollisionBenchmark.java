@@ -0,0 +1,88 @@
+package com.dujo.antcolonysimulator.benchmarks;
+
+import com.dujo.antcolonysimulator.ant.Ant;
+import com.dujo.antcolonysimulator.world.Collision;
+import com.dujo.antcolonysimulator.world.World;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of raycasts over the view range of an ant from random free points, one by one and
+ * in batches of RAYS_PER_ORIGIN rays from the same point like the samples of an ant
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CollisionBenchmark {
+    static final int RAY_COUNT = 1024;
+    static final int RAYS_PER_ORIGIN = 32;
+
+    @Param({"open", "cluttered"})
+    String map;
+
+    World world;
+    float[] points;
+    float[] angles;
+    Collision collision;
+    float[] directionsX;
+    float[] directionsY;
+    float[] distances;
+    byte[] normalAxes;
+
+    @Setup
+    public void setup(){
+        world = map.equals("open") ? BenchmarkWorlds.createOpenWorld(600) : BenchmarkWorlds.createClutteredWorld(600);
+        points = BenchmarkWorlds.getFreePoints(world, RAY_COUNT);
+
+        Random random = new Random(BenchmarkWorlds.SEED);
+        angles = new float[RAY_COUNT];
+        for(int i = 0; i < RAY_COUNT; ++i)
+            angles[i] = (float) (random.nextFloat() * Math.PI * 2);
+
+        collision = new Collision();
+        directionsX = new float[RAYS_PER_ORIGIN];
+        directionsY = new float[RAYS_PER_ORIGIN];
+        for(int i = 0; i < RAYS_PER_ORIGIN; ++i){
+            directionsX[i] = (float) Math.cos(angles[i]);
+            directionsY[i] = (float) Math.sin(angles[i]);
+        }
+        distances = new float[RAYS_PER_ORIGIN];
+        normalAxes = new byte[RAYS_PER_ORIGIN];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public void getFirstCollision(Blackhole blackhole){
+        for(int i = 0; i < RAY_COUNT; ++i)
+            blackhole.consume(world.getFirstCollision(
+                    points[i * 2], points[i * 2 + 1], angles[i], Ant.ANT_VIEW_RANGE, collision
+            ).getDistance());
+    }
+
+    // Both batched benchmarks cast the same rays, the first RAYS_PER_ORIGIN directions from every origin
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public void getFirstCollisionFromSharedOrigins(Blackhole blackhole){
+        for(int i = 0; i < RAY_COUNT; ++i){
+            int origin = i / RAYS_PER_ORIGIN;
+            int ray = i % RAYS_PER_ORIGIN;
+            blackhole.consume(world.getFirstCollision(
+                    points[origin * 2], points[origin * 2 + 1], directionsX[ray], directionsY[ray], Ant.ANT_VIEW_RANGE,
+                    collision
+            ).getDistance());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public void castRays(Blackhole blackhole){
+        for(int origin = 0; origin < RAY_COUNT / RAYS_PER_ORIGIN; ++origin){
+            world.castRays(points[origin * 2], points[origin * 2 + 1], directionsX, directionsY, RAYS_PER_ORIGIN,
+                    Ant.ANT_VIEW_RANGE, distances, normalAxes);
+            blackhole.consume(distances);
+        }
+    }
+}
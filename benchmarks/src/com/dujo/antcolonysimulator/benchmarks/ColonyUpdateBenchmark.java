@@ -0,0 +1,43 @@
+package com.dujo.antcolonysimulator.benchmarks;
+
+import com.dujo.antcolonysimulator.simulation.SimulationEngine;
+import com.dujo.antcolonysimulator.world.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.geom.Point2D;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a full simulation tick for a single colony, by ant count and worker thread count
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColonyUpdateBenchmark {
+    @Param({"200", "2000", "20000"})
+    int antCount;
+
+    @Param({"0", "4"})
+    int threadCount;
+
+    SimulationEngine engine;
+
+    @Setup(Level.Iteration)
+    public void setup(){
+        World world = BenchmarkWorlds.createClutteredWorld(600);
+        BenchmarkWorlds.addFoodAndPheromones(world, 0.05f);
+
+        engine = new SimulationEngine(world, threadCount);
+        engine.addColony(new Point2D.Float(150f, 150f), antCount);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown(){
+        engine.dispose();
+    }
+
+    @Benchmark
+    public void step(){
+        engine.step(SimulationEngine.DEFAULT_TIME_STEP);
+    }
+}
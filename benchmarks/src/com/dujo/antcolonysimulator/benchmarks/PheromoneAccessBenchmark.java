@@ -0,0 +1,63 @@
+package com.dujo.antcolonysimulator.benchmarks;
+
+import com.dujo.antcolonysimulator.ant.AntPheromone;
+import com.dujo.antcolonysimulator.world.EvaporationMode;
+import com.dujo.antcolonysimulator.world.World;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the per cell pheromone accessors on random cells
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PheromoneAccessBenchmark {
+    static final int ACCESS_COUNT = 1024;
+
+    @Param({"EAGER", "LAZY"})
+    EvaporationMode evaporationMode;
+
+    World world;
+    int[] cellIndices;
+
+    @Setup
+    public void setup(){
+        world = BenchmarkWorlds.createOpenWorld(600);
+        BenchmarkWorlds.addFoodAndPheromones(world, 0.2f);
+        world.setEvaporationMode(evaporationMode);
+
+        // Let some degrade periods pass so lazy cells have pending evaporation
+        for(int i = 0; i < 10; ++i)
+            world.update(World.PHEROMONE_DEGRADE_PERIOD);
+
+        Random random = new Random(BenchmarkWorlds.SEED);
+        cellIndices = new int[ACCESS_COUNT];
+        for(int i = 0; i < ACCESS_COUNT; ++i)
+            cellIndices[i] = world.getCellIndex(random.nextInt(world.getRowCount()), random.nextInt(world.getColumnCount()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESS_COUNT)
+    public void getPheromone(Blackhole blackhole){
+        for(int i = 0; i < ACCESS_COUNT; ++i)
+            blackhole.consume(world.getPheromoneOnCell(cellIndices[i], AntPheromone.TO_FOOD, 0));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESS_COUNT)
+    public void setPheromone(){
+        for(int i = 0; i < ACCESS_COUNT; ++i)
+            world.setPheromoneOnCell(cellIndices[i], AntPheromone.TO_FOOD, World.MAX_PHEROMONE_INTENSITY, 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESS_COUNT)
+    public void degradePheromones(){
+        for(int i = 0; i < ACCESS_COUNT; ++i)
+            world.degradeAllPheromonesOnCell(cellIndices[i], World.PHEROMONE_DEGRADE_RATIO);
+    }
+}
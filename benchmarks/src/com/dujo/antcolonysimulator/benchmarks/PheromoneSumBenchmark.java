@@ -0,0 +1,66 @@
+package com.dujo.antcolonysimulator.benchmarks;
+
+import com.dujo.antcolonysimulator.ant.AntPheromone;
+import com.dujo.antcolonysimulator.world.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of summing a pheromone over the squares an ant senses, for several view ranges,
+ * cell by cell against the summed area tables of the world
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PheromoneSumBenchmark {
+    static final int QUERY_COUNT = 256;
+
+    @Param({"10", "20", "40", "80"})
+    int viewRange;
+
+    World world;
+    int[] startRows;
+    int[] startColumns;
+
+    @Setup
+    public void setup(){
+        world = BenchmarkWorlds.createOpenWorld(600);
+        BenchmarkWorlds.addFoodAndPheromones(world, 0.2f);
+        world.setSummedAreaEnabled(true);
+        world.updateSummedAreaTables();
+
+        Random random = new Random(BenchmarkWorlds.SEED);
+        startRows = new int[QUERY_COUNT];
+        startColumns = new int[QUERY_COUNT];
+        for(int i = 0; i < QUERY_COUNT; ++i){
+            startRows[i] = random.nextInt(world.getRowCount() - viewRange);
+            startColumns[i] = random.nextInt(world.getColumnCount() - viewRange);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public float cellByCell(){
+        float sum = 0f;
+        for(int i = 0; i < QUERY_COUNT; ++i)
+            for(int row = startRows[i]; row < startRows[i] + viewRange; ++row)
+                for(int column = startColumns[i]; column < startColumns[i] + viewRange; ++column)
+                    sum += world.getPheromoneOnCell(world.getCellIndex(row, column), AntPheromone.TO_FOOD, 0);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public float summedArea(){
+        float sum = 0f;
+        for(int i = 0; i < QUERY_COUNT; ++i)
+            sum += world.getPheromoneSum(
+                    startRows[i], startColumns[i],
+                    startRows[i] + viewRange, startColumns[i] + viewRange,
+                    AntPheromone.TO_FOOD, 0
+            );
+        return sum;
+    }
+}
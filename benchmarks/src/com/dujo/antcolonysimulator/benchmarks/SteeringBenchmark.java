@@ -0,0 +1,79 @@
+package com.dujo.antcolonysimulator.benchmarks;
+
+import com.dujo.antcolonysimulator.ant.Ant;
+import com.dujo.antcolonysimulator.ant.AntPopulation;
+import com.dujo.antcolonysimulator.ant.MoveDirection;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the steering operations of MoveDirection per ant, with floating point and with
+ * fixed point heading
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SteeringBenchmark {
+    static final int ANT_COUNT = 1024;
+
+    @Param({"false", "true"})
+    boolean fixedPointHeading;
+
+    AntPopulation population;
+    float[] targetAngles;
+    float[] targetVectorsX;
+    float[] targetVectorsY;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        population = new AntPopulation(ANT_COUNT);
+        population.setFixedPointHeading(fixedPointHeading);
+        targetAngles = new float[ANT_COUNT];
+        targetVectorsX = new float[ANT_COUNT];
+        targetVectorsY = new float[ANT_COUNT];
+
+        Random random = new Random(0);
+        for(int i = 0; i < ANT_COUNT; ++i){
+            population.addAnt(random.nextFloat() * 600f, random.nextFloat() * 600f,
+                    (random.nextFloat() * 2f - 1f) * (float) Math.PI);
+            targetAngles[i] = (random.nextFloat() * 2f - 1f) * (float) Math.PI;
+            targetVectorsX[i] = random.nextFloat() * 2f - 1f;
+            targetVectorsY[i] = random.nextFloat() * 2f - 1f;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANT_COUNT)
+    public void setTargetAngle(){
+        for(int i = 0; i < ANT_COUNT; ++i)
+            MoveDirection.setTargetAngle(population, i, targetAngles[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANT_COUNT)
+    public void setTargetVector(){
+        for(int i = 0; i < ANT_COUNT; ++i)
+            MoveDirection.setTargetVector(population, i, targetVectorsX[i], targetVectorsY[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANT_COUNT)
+    public void rotate(){
+        for(int i = 0; i < ANT_COUNT; ++i)
+            MoveDirection.rotate(population, i, 1f / 60f, Ant.ROTATE_SPEED);
+    }
+
+    /**
+     * Benchmark of a whole steering step, a new target followed by a turn towards it
+     */
+    @Benchmark
+    @OperationsPerInvocation(ANT_COUNT)
+    public void steer(){
+        for(int i = 0; i < ANT_COUNT; ++i){
+            MoveDirection.setTargetAngle(population, i, targetAngles[i]);
+            MoveDirection.rotate(population, i, 1f / 60f, Ant.ROTATE_SPEED);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.dujo.antcolonysimulator.benchmarks;
+
+import com.dujo.antcolonysimulator.simulation.SimulationEngine;
+import com.dujo.antcolonysimulator.world.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.geom.Point2D;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a full simulation tick on a world with many walls, with view ranges cast by every
+ * ant and looked up from the visibility cache. The cache fills during warmup, so iterations
+ * measure it warm like in a long run
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VisibilityCacheBenchmark {
+    @Param({"false", "true"})
+    boolean visibilityCache;
+
+    SimulationEngine engine;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        World world = BenchmarkWorlds.createClutteredWorld(600);
+        BenchmarkWorlds.addFoodAndPheromones(world, 0.05f);
+
+        engine = new SimulationEngine(world, 0, BenchmarkWorlds.SEED);
+        engine.addColony(new Point2D.Float(150f, 150f), 2000);
+        engine.setVisibilityCacheEnabled(visibilityCache);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        engine.dispose();
+    }
+
+    @Benchmark
+    public void step(){
+        engine.step(SimulationEngine.DEFAULT_TIME_STEP);
+    }
+}
@@ -0,0 +1,35 @@
+package com.dujo.antcolonysimulator.benchmarks;
+
+import com.dujo.antcolonysimulator.world.EvaporationMode;
+import com.dujo.antcolonysimulator.world.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a world update that triggers a pheromone degrade period
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WorldUpdateBenchmark {
+    @Param({"300", "600", "1200"})
+    int mapSize;
+
+    @Param({"EAGER", "LAZY"})
+    EvaporationMode evaporationMode;
+
+    World world;
+
+    @Setup
+    public void setup(){
+        world = BenchmarkWorlds.createOpenWorld(mapSize);
+        BenchmarkWorlds.addFoodAndPheromones(world, 0.05f);
+        world.setEvaporationMode(evaporationMode);
+    }
+
+    @Benchmark
+    public void update(){
+        world.update(World.PHEROMONE_DEGRADE_PERIOD);
+    }
+}
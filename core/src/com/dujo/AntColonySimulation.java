@@ -4,21 +4,28 @@ import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.graphics.OrthographicCamera;
-import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.ScreenUtils;
 import com.dujo.antcolonysimulator.colony.Colony;
 import com.dujo.antcolonysimulator.renderer.MyRenderer;
+import com.dujo.antcolonysimulator.simulation.SimulationEngine;
+import com.dujo.antcolonysimulator.simulation.SimulationSnapshot;
+import com.dujo.antcolonysimulator.simulation.SnapshotWriter;
+import com.dujo.antcolonysimulator.simulation.WorldLoader;
 import com.dujo.antcolonysimulator.world.World;
 
-import java.awt.*;
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class AntColonySimulation extends ApplicationAdapter {
 	public enum TEXTURE_INDICES {
@@ -32,14 +39,17 @@ public class AntColonySimulation extends ApplicationAdapter {
 		WALL_TEXTURE_INDEX
 	}
 
+	private static final Path SNAPSHOT_PATH = Paths.get("snapshot" + SimulationSnapshot.FILE_EXTENSION);
 
+	private SimulationEngine engine;
+	private SnapshotWriter snapshotWriter;
 	private World world;
-	private List<Colony> colonies;
 	private MyRenderer renderer;
 	private int timeScale;
 	private boolean isPaused;
 	private SpriteBatch spriteBatch;
 	private OrthographicCamera camera;
+	private Rectangle visibleArea;
 	private Texture spriteSheet;
 	private TextureRegion[] textureRegions;
 	private int brushSize;
@@ -50,7 +60,8 @@ public class AntColonySimulation extends ApplicationAdapter {
 	@Override
 	public void create(){
 		loadWorldFromImage();
-		colonies = new ArrayList<>();
+		engine = new SimulationEngine(world, Runtime.getRuntime().availableProcessors());
+		snapshotWriter = new SnapshotWriter();
 
 		renderer = new MyRenderer(world);
 
@@ -68,6 +79,7 @@ public class AntColonySimulation extends ApplicationAdapter {
 		camera = new OrthographicCamera(200, 200 * (h / w));
 		camera.position.set(50f, 50f, 0f);
 		camera.update();
+		visibleArea = new Rectangle();
 
 		// Setup misc
 		brushSize = 1;
@@ -88,13 +100,20 @@ public class AntColonySimulation extends ApplicationAdapter {
 
 		float deltaTime = Gdx.graphics.getDeltaTime();
 
-		deltaTime *= isPaused ? 0f : timeScale;
+		if(!isPaused)
+			engine.advance(deltaTime, timeScale);
 
-		world.update(deltaTime);
-		for(Colony colony : colonies)
-			colony.update(deltaTime);
+		// Visible part of the world, camera isn't rotated so the viewport is axis aligned
+		float visibleWidth = camera.viewportWidth * camera.zoom;
+		float visibleHeight = camera.viewportHeight * camera.zoom;
+		visibleArea.set(
+				camera.position.x - visibleWidth / 2f,
+				camera.position.y - visibleHeight / 2f,
+				visibleWidth,
+				visibleHeight
+		);
 
-		renderer.render(spriteBatch, textureRegions);
+		renderer.render(spriteBatch, textureRegions, visibleArea, engine.getInterpolationAlpha(), engine.getAntIndex());
 
 		spriteBatch.end();
 
@@ -158,15 +177,13 @@ public class AntColonySimulation extends ApplicationAdapter {
 
 		// Place colonies
 		if(Gdx.input.isButtonJustPressed(Input.Buttons.MIDDLE)){
-			if(colonies.size() < World.MAX_COLONY_COUNT) {
-				Vector3 touchPosition = new Vector3(Gdx.input.getX(), Gdx.input.getY(), 0f);
-				camera.unproject(touchPosition);
-				Point2D.Float touchPosition2D = new Point2D.Float(touchPosition.x, touchPosition.y);
+			Vector3 touchPosition = new Vector3(Gdx.input.getX(), Gdx.input.getY(), 0f);
+			camera.unproject(touchPosition);
+			Point2D.Float touchPosition2D = new Point2D.Float(touchPosition.x, touchPosition.y);
 
-				Colony newColony = new Colony(colonies.size(), touchPosition2D, world);
-				colonies.add(newColony);
+			Colony newColony = engine.addColony(touchPosition2D);
+			if(newColony != null)
 				renderer.addColony(newColony);
-			}
 		}
 
 		// Toggle rendering
@@ -202,41 +219,72 @@ public class AntColonySimulation extends ApplicationAdapter {
 		if(Gdx.input.isKeyJustPressed(Input.Keys.NUM_3)){
 			timeScale = 3;
 		}
+		if(Gdx.input.isKeyJustPressed(Input.Keys.NUM_4)){
+			timeScale = 10;
+		}
+		if(Gdx.input.isKeyJustPressed(Input.Keys.NUM_5)){
+			timeScale = 30;
+		}
+		if(Gdx.input.isKeyJustPressed(Input.Keys.NUM_6)){
+			timeScale = 100;
+		}
+		if(Gdx.input.isKeyJustPressed(Input.Keys.NUM_7)){
+			timeScale = 300;
+		}
+
+		// Snapshots
+		if(Gdx.input.isKeyJustPressed(Input.Keys.F5)){
+			snapshotWriter.save(engine, SNAPSHOT_PATH);
+		}
+		if(Gdx.input.isKeyJustPressed(Input.Keys.F9)){
+			loadSnapshot();
+		}
 
 	}
 
 	private void loadWorldFromImage(){
-		final Color WALL_COLOR = new Color(161, 161, 161);
-		final Color FOOD_COLOR = new Color(13, 255, 0);
-
-		Pixmap worldImage = new Pixmap(Gdx.files.internal("worldMap300x300.png"));
-
-		int widthPixmap = worldImage.getWidth();
-		int heightPixmap = worldImage.getHeight();
-		world = new World(widthPixmap, heightPixmap, 1);
-
-		for(int y=0; y < heightPixmap; y++)
-			for(int x=0; x < widthPixmap; x++){
-				int colorData = worldImage.getPixel(x, y);
-				int red = colorData >>> 24;
-				int green = (colorData & 0xFF0000) >>> 16;
-				int blue = (colorData & 0xFF00) >>> 8;
-				int alpha = colorData & 0xFF;
-
-				Color color = new Color(red, green, blue);
-				if(color.equals(WALL_COLOR))
-					world.getCell(heightPixmap - 1 - y, x).setWall(true);
-				else if(color.equals(FOOD_COLOR))
-					world.getCell(heightPixmap - 1 - y, x).setFoodOnCell(20);
+		InputStream inputStream = Gdx.files.internal("worldMap300x300.png").read();
+		try {
+			world = WorldLoader.loadFromImage(inputStream);
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Could not load world map", e);
+		} finally {
+			try {
+				inputStream.close();
+			} catch (IOException ignored) {
 			}
+		}
+	}
+
+	private void loadSnapshot(){
+		if(!Files.exists(SNAPSHOT_PATH))
+			return;
 
-		worldImage.dispose();
+		SimulationEngine loadedEngine;
+		try {
+			loadedEngine = SimulationSnapshot.load(SNAPSHOT_PATH, Runtime.getRuntime().availableProcessors());
+		} catch (IOException e) {
+			Gdx.app.error("AntColonySimulation", "Could not load snapshot", e);
+			return;
+		}
+
+		engine.dispose();
+		renderer.dispose();
+
+		engine = loadedEngine;
+		world = engine.getWorld();
+		renderer = new MyRenderer(world);
+		for(Colony colony : engine.getColonies())
+			renderer.addColony(colony);
 	}
 
 	@Override
 	public void dispose () {
 		spriteSheet.dispose();
 		spriteBatch.dispose();
+		renderer.dispose();
+		engine.dispose();
+		snapshotWriter.dispose();
 	}
 
 }
@@ -1,16 +1,18 @@
 package com.dujo.antcolonysimulator.ant;
 
-import com.badlogic.gdx.math.Vector2;
 import com.dujo.antcolonysimulator.colony.Colony;
-import com.dujo.antcolonysimulator.common.Cooldown;
+import com.dujo.antcolonysimulator.colony.WorldEditBuffer;
 import com.dujo.antcolonysimulator.world.Collision;
+import com.dujo.antcolonysimulator.world.VisibilityCache;
 import com.dujo.antcolonysimulator.world.World;
-import com.dujo.antcolonysimulator.world.WorldCell;
 
-import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Class that steps the ants of a colony, the state of every ant is stored in the colony's
+ * AntPopulation and ants are addressed by their index in it
+ */
 public class Ant {
     public static final float MOVE_SPEED = 20f;
     public static final float ROTATE_SPEED = 10f;
@@ -31,120 +33,211 @@ public class Ant {
     public static final float DESIRE_TO_WANDER = 0.01f;
     public final float CHANCE_TO_REPEL = 0.5f;
 
+    private static final byte LOOK_FOR_FOOD = (byte) AntGoal.LOOK_FOR_FOOD.ordinal();
+    private static final byte RETURN_TO_COLONY = (byte) AntGoal.RETURN_TO_COLONY.ordinal();
+    private static final byte REPEL_FROM_TRAIL = (byte) AntGoal.REPEL_FROM_TRAIL.ordinal();
+    private static final AntPheromone[] PHEROMONES = AntPheromone.values();
+    private static final int GOALS_PER_KEY = AntGoal.values().length;
+    private static final int MAX_SAMPLE_COUNT = TOTAL_SAMPLE_COUNT / 3;
+    private static final int SUMMED_AREA_BAND_COUNT = 3;
+    private static final float COS_HALF_DELTA_FIELD_OF_VIEW = (float) Math.cos(ANT_DELTA_FIELD_OF_VIEW / 2f);
+
+    private static final ThreadLocal<SensingScratch> SENSING_SCRATCH = new ThreadLocal<SensingScratch>(){
+        @Override
+        protected SensingScratch initialValue() {
+            return new SensingScratch();
+        }
+    };
+
 
-    private final Point2D.Float position;
-    private final MoveDirection moveDirection;
-    private AntGoal goal;
-    private AntPheromone pheromone;
-    private float pheromoneIntensity;
-    private int foodHoldingAmount;
-    private final Cooldown rotationCooldown;
-    private final Cooldown pheromoneDropCooldown;
+    private final AntPopulation population;
     private final World world;
     private final Colony colony;
-
-    public Ant(Point2D.Float spawnPoint, float spawnAngle, World world, Colony colony){
-        position = spawnPoint;
-        moveDirection = new MoveDirection();
-        moveDirection.setCurrentAngle(spawnAngle);
-        moveDirection.setTargetAngle(spawnAngle);
-
-        goal = AntGoal.LOOK_FOR_FOOD;
-        pheromone = AntPheromone.TO_COLONY;
-        pheromoneIntensity = World.MAX_PHEROMONE_INTENSITY;
-
-        rotationCooldown = new Cooldown(ROTATION_PERIOD);
-        pheromoneDropCooldown = new Cooldown(PHEROMONE_DROP_PERIOD);
-
+    private final SensingStencil stencil;
+    private SensingMode sensingMode;
+    private boolean isSensingMemoEnabled;
+    private final AtomicLong sensingMemoHitCount;
+    private final AtomicLong sensingMemoLookupCount;
+
+    public Ant(AntPopulation population, World world, Colony colony){
+        this.population = population;
         this.world = world;
         this.colony = colony;
+        stencil = SensingStencil.forCellSize(world.getCellSize());
+        sensingMode = SensingMode.SAMPLED;
+        sensingMemoHitCount = new AtomicLong();
+        sensingMemoLookupCount = new AtomicLong();
     }
 
     /**
-     * Base update method for Ant class that calls all other update methods
+     * Base update method for Ant class that calls all other update methods for a range of ants
      *
+     * @param startIndex index of the first ant to update
+     * @param endIndex index after the last ant to update
      * @param deltaTime time passed since last frame
+     * @param editBuffer buffer through which the ants change the world and their colony
      */
-    public void update(float deltaTime){
-        if(world.isPointOutOfBounds(position))
-            return;
+    public void update(int startIndex, int endIndex, float deltaTime, WorldEditBuffer editBuffer){
+        SensingScratch scratch = SENSING_SCRATCH.get();
+        // Memoized sensing is only shared within the range, colonies step a tick in chunks that
+        // don't depend on the thread count, so nothing is shared between ticks or chunks
+        scratch.sensingMemo.clear();
+        for(int i = startIndex; i < endIndex; ++i)
+            update(i, deltaTime, editBuffer, scratch);
+
+        if(isSensingMemoEnabled){
+            sensingMemoHitCount.addAndGet(scratch.sensingMemo.hitCount);
+            sensingMemoLookupCount.addAndGet(scratch.sensingMemo.lookupCount);
+        }
+    }
 
-        pheromoneDropCooldown.update(deltaTime);
-        if(pheromoneDropCooldown.isReadyAutoReset() && pheromone != null){
-            world.setPheromone(position, pheromone, pheromoneIntensity, colony.getColonyIndex());
+    private void update(int i, float deltaTime, WorldEditBuffer editBuffer, SensingScratch scratch){
+        AntPopulation ants = population;
 
-            pheromoneIntensity *= 0.99f;
-            if(pheromoneIntensity < PHEROMONE_INTENSITY_THRESHOLD){
-                goal = AntGoal.RETURN_TO_COLONY;
-                pheromone = null;
+        if(world.isPointOutOfBounds(ants.x[i], ants.y[i]))
+            return;
+
+        ants.pheromoneDropCooldown[i] += deltaTime;
+        if(ants.pheromoneDropCooldown[i] >= PHEROMONE_DROP_PERIOD){
+            ants.pheromoneDropCooldown[i] = 0f;
+
+            if(ants.pheromone[i] != AntPopulation.NO_PHEROMONE) {
+                editBuffer.setPheromone(
+                        world.getCellIndex(ants.x[i], ants.y[i]),
+                        PHEROMONES[ants.pheromone[i]],
+                        ants.pheromoneIntensity[i],
+                        colony.getColonyIndex()
+                );
+
+                ants.pheromoneIntensity[i] *= 0.99f;
+                if (ants.pheromoneIntensity[i] < PHEROMONE_INTENSITY_THRESHOLD) {
+                    ants.goal[i] = RETURN_TO_COLONY;
+                    ants.pheromone[i] = AntPopulation.NO_PHEROMONE;
+                }
             }
         }
 
-        rotationCooldown.update(deltaTime);
-        if(rotationCooldown.isReadyAutoReset())
-            moveDirection.rotate(deltaTime, ROTATE_SPEED);
+        ants.rotationCooldown[i] += deltaTime;
+        if(ants.rotationCooldown[i] >= ROTATION_PERIOD) {
+            ants.rotationCooldown[i] = 0f;
+            MoveDirection.rotate(ants, i, deltaTime, ROTATE_SPEED);
+        }
+
+        updateTarget(i, scratch);
+        checkGoal(i, editBuffer, scratch);
+        updatePosition(i, deltaTime, editBuffer, scratch);
+    }
 
-        updateTarget();
-        checkGoal();
-        updatePosition(deltaTime);
+    public SensingMode getSensingMode() {
+        return sensingMode;
     }
 
     /**
-     * Method that samples random points in ants view and chooses the most favourable target
+     * Method that sets how the ants sense pheromones, summed areas make the world keep its
+     * summed area tables
+     *
+     * @param sensingMode mode to sense in
      */
-    private void updateTarget() {
-        if(moveDirection.getGoalPoint() != null)
-            return;
+    public void setSensingMode(SensingMode sensingMode) {
+        this.sensingMode = sensingMode;
+        if(sensingMode == SensingMode.SUMMED_AREA)
+            world.setSummedAreaEnabled(true);
+    }
 
-        SampleResult totalSampleResult = new SampleResult(0f);
-        for(int i = 0; i < 3; ++i) {
-            // Go through view field in partition, turn towards the partition with the highest pheromone intensity
-            SampleResult partitionSampleResult = new SampleResult(ANT_DELTA_FIELD_OF_VIEW - ANT_DELTA_FIELD_OF_VIEW * i);
-            List<SamplePoint> samplePoints = getSamplePoints(
-                    TOTAL_SAMPLE_COUNT / 3,
-                    ANT_FIELD_OF_VIEW / 3, ANT_VIEW_RANGE,
-                    partitionSampleResult.angleOffset
-            );
+    public boolean isSensingMemoEnabled() {
+        return isSensingMemoEnabled;
+    }
+
+    /**
+     * Method that sets if ants stepped together in the same cell, with the same goal and stencil
+     * heading share one sensing of their view, see SensingMemo. Only stencil sensing is shared,
+     * the other modes depend on the random draws or exact position of every ant
+     *
+     * @param isSensingMemoEnabled true to share sensing
+     */
+    public void setSensingMemoEnabled(boolean isSensingMemoEnabled) {
+        this.isSensingMemoEnabled = isSensingMemoEnabled;
+    }
+
+    /**
+     * @return number of times ants reused the sensing of another ant
+     */
+    public long getSensingMemoHitCount() {
+        return sensingMemoHitCount.get();
+    }
 
-            for (SamplePoint samplePoint : samplePoints) {
-                WorldCell sampleCell = world.getCell(samplePoint.point);
+    /**
+     * @return number of times ants looked for sensing to reuse
+     */
+    public long getSensingMemoLookupCount() {
+        return sensingMemoLookupCount.get();
+    }
+
+    /**
+     * Method that heads for food in ants view, or senses pheromones in ants view and chooses
+     * the most favourable target
+     *
+     * @param i index of the ant
+     * @param scratch buffers of the current thread
+     */
+    private void updateTarget(int i, SensingScratch scratch) {
+        AntPopulation ants = population;
 
-                // Distance to samples goes into calculation of score for this partition
-                partitionSampleResult.averageSampleDistance += samplePoint.distance;
+        if(ants.hasGoalPoint[i])
+            return;
 
-                if (goal == AntGoal.LOOK_FOR_FOOD) {
-                    if (sampleCell.isFoodOnCell()) {
-                        partitionSampleResult.goalPoint = samplePoint.point;
-                        break;
-                    }
+        // If returning home with no food and food is in sight, update goal
+        if((ants.goal[i] == LOOK_FOR_FOOD || ants.foodHoldingAmount[i] == 0) && setFoodGoalPoint(i)){
+            ants.goal[i] = LOOK_FOR_FOOD;
+            return;
+        }
 
-                    partitionSampleResult.pheromoneIntensity += sampleCell.getPheromoneOnCell(AntPheromone.TO_FOOD, colony.getColonyIndex());
-                    partitionSampleResult.repellentIntensity += sampleCell.getPheromoneOnCell(AntPheromone.REPELLENT, colony.getColonyIndex());
+        SampleResult totalSampleResult = scratch.totalSampleResult.reset(0f);
+        if(isSensingMemoEnabled && sensingMode == SensingMode.STENCIL)
+            senseViewMemoized(i, totalSampleResult, scratch);
+        else
+            senseView(i, totalSampleResult, scratch);
 
-                } else if (goal == AntGoal.RETURN_TO_COLONY || goal == AntGoal.REPEL_FROM_TRAIL) {
-                    // If returning home with no food and food is in sight, update goal
-                    if (foodHoldingAmount == 0 && sampleCell.isFoodOnCell()) {
-                        partitionSampleResult.goalPoint = samplePoint.point;
-                        goal = AntGoal.LOOK_FOR_FOOD;
-                        break;
-                    }
+        // If goal is found ignore everything else
+        if(totalSampleResult.hasGoalPoint){
+            MoveDirection.setGoalPoint(ants, i, totalSampleResult.goalPointX, totalSampleResult.goalPointY);
+            MoveDirection.setTargetPoint(ants, i, ants.goalPointX[i], ants.goalPointY[i]);
+            return;
+        }
 
-                    if (arePointsInRangeOfEachOther(samplePoint.point, colony.getPosition(), ANT_PICKUP_RANGE)) {
-                        partitionSampleResult.goalPoint = samplePoint.point;
-                        break;
-                    }
+        // If ants sees repellent there is only a small chance that it will follow and also start repelling
+        if(ants.foodHoldingAmount[i] == 0 && totalSampleResult.repellentIntensity > 0f && AntRandom.nextFloat(ants, i) <= CHANCE_TO_REPEL){
+            ants.goal[i] = REPEL_FROM_TRAIL;
+            ants.pheromone[i] = AntPopulation.NO_PHEROMONE;
+        }else if(totalSampleResult.pheromoneIntensity > 0f) // Some pheromones were sampled
+            MoveDirection.setTargetAngle(ants, i, ants.currentAngle[i] + totalSampleResult.angleOffset);
+        else if(AntRandom.nextFloat(ants, i) < DESIRE_TO_WANDER) // No pheromones in sight, chance to choose random target
+            MoveDirection.setRandomTarget(ants, i);
+    }
 
-                    partitionSampleResult.pheromoneIntensity += sampleCell.getPheromoneOnCell(AntPheromone.TO_COLONY, colony.getColonyIndex());
-                }
-            }
+    /**
+     * Method that senses every partition of the view and keeps the most favourable one
+     *
+     * @param i index of the ant
+     * @param totalSampleResult result of the view, with the goal point if one was found
+     * @param scratch buffers of the current thread
+     */
+    private void senseView(int i, SampleResult totalSampleResult, SensingScratch scratch){
+        SampleResult partitionSampleResult = scratch.partitionSampleResult;
+        for(int j = 0; j < 3; ++j) {
+            // Go through view field in partition, turn towards the partition with the highest pheromone intensity
+            partitionSampleResult.reset(ANT_DELTA_FIELD_OF_VIEW - ANT_DELTA_FIELD_OF_VIEW * j);
+            if(sensingMode == SensingMode.STENCIL)
+                sensePartitionWithStencil(i, j, partitionSampleResult);
+            else if(sensingMode == SensingMode.SUMMED_AREA)
+                sensePartitionWithSummedAreas(i, partitionSampleResult, scratch);
+            else
+                sensePartitionWithSamples(i, partitionSampleResult, scratch);
 
-            partitionSampleResult.averageSampleDistance /= samplePoints.size();
             partitionSampleResult.calculateScore();
 
-            // If goal is found ignore everything else
-            if(partitionSampleResult.goalPoint != null){
-                moveDirection.setGoalPoint(partitionSampleResult.goalPoint);
-                moveDirection.setTargetVector(position, moveDirection.getGoalPoint());
+            if(partitionSampleResult.hasGoalPoint){
+                totalSampleResult.setGoalPoint(partitionSampleResult.goalPointX, partitionSampleResult.goalPointY);
                 return;
             }
 
@@ -158,144 +251,415 @@ public class Ant {
                 totalSampleResult.repellentIntensity = partitionSampleResult.repellentIntensity;
             }
         }
+    }
 
-        // If ants sees repellent there is only a small chance that it will follow and also start repelling
-        if(foodHoldingAmount == 0 && totalSampleResult.repellentIntensity > 0f && (float) Math.random() <= CHANCE_TO_REPEL){
-            goal = AntGoal.REPEL_FROM_TRAIL;
-            pheromone = null;
-        }else if(totalSampleResult.pheromoneIntensity > 0f) // Some pheromones were sampled
-            moveDirection.setTargetAngle(moveDirection.getCurrentAngle() + totalSampleResult.angleOffset);
-        else if(Math.random() < DESIRE_TO_WANDER) // No pheromones in sight, chance to choose random target
-            moveDirection.setRandomTarget();
+    /**
+     * Method that reuses the stencil sensing of an ant stepped before in the same cell, with the
+     * same goal and stencil heading, or senses the view and remembers it
+     *
+     * @param i index of the ant
+     * @param totalSampleResult result of the view, with the goal point if one was found
+     * @param scratch buffers of the current thread
+     */
+    private void senseViewMemoized(int i, SampleResult totalSampleResult, SensingScratch scratch){
+        AntPopulation ants = population;
+        SensingMemo sensingMemo = scratch.sensingMemo;
+
+        long key = SensingMemo.getKey(
+                world.getCellIndex(ants.x[i], ants.y[i]),
+                SensingStencil.getHeadingIndex(ants.currentAngle[i]),
+                ants.goal[i]
+        );
+        if(sensingMemo.get(key, totalSampleResult))
+            return;
+
+        senseView(i, totalSampleResult, scratch);
+        sensingMemo.put(key, totalSampleResult);
+    }
+
+    /**
+     * Method that senses a view partition through random points in it
+     *
+     * @param i index of the ant
+     * @param result result of the partition, its angle offset has to be set
+     * @param scratch buffers of the current thread
+     */
+    private void sensePartitionWithSamples(int i, SampleResult result, SensingScratch scratch){
+        int sampleCount = getSamplePoints(
+                i,
+                TOTAL_SAMPLE_COUNT / 3,
+                ANT_FIELD_OF_VIEW / 3, ANT_VIEW_RANGE,
+                result.angleOffset,
+                scratch
+        );
+
+        for (int k = 0; k < sampleCount; ++k) {
+            float sampleX = scratch.sampleX[k];
+            float sampleY = scratch.sampleY[k];
+            if(addSample(i, result, sampleX, sampleY, world.getCellIndex(sampleX, sampleY), scratch.sampleDistance[k]))
+                break;
+        }
+
+        result.averageSampleDistance /= sampleCount;
+    }
+
+    /**
+     * Method that senses a view partition through the precomputed rays of the stencil. Every ray
+     * is walked up to the first wall, then samples are taken at fixed fractions of the part of
+     * the ray that is seen, like the random points of sampling are. Fractions are staggered
+     * between the rays of a partition so together they cover every distance
+     *
+     * @param i index of the ant
+     * @param partition index of the partition, from the left of the ant to its right
+     * @param result result of the partition
+     */
+    private void sensePartitionWithStencil(int i, int partition, SampleResult result){
+        AntPopulation ants = population;
+        SensingStencil stencil = this.stencil;
+
+        float cellSize = world.getCellSize();
+        int row = (int) (ants.y[i] / cellSize);
+        int column = (int) (ants.x[i] / cellSize);
+        int heading = SensingStencil.getHeadingIndex(ants.currentAngle[i]);
+        int sampleCount = 0;
+
+        for(int ray = 0; ray < SensingStencil.RAYS_PER_PARTITION; ++ray){
+            int rayIndex = SensingStencil.getRayIndex(heading, partition, ray);
+            int rayStart = stencil.getRayStart(rayIndex);
+            int rayEnd = stencil.getRayEnd(rayIndex);
+
+            // Line of sight, cells from the first wall on are hidden
+            int visibleEnd = rayStart;
+            float visibleDistance = stencil.getViewRange();
+            while(visibleEnd < rayEnd){
+                int cellRow = row + stencil.getRowOffset(visibleEnd);
+                int cellColumn = column + stencil.getColumnOffset(visibleEnd);
+                if(world.checkCell(cellRow, cellColumn) || world.isWall(world.getCellIndex(cellRow, cellColumn))){
+                    visibleDistance = stencil.getDistance(visibleEnd);
+                    break;
+                }
+                ++visibleEnd;
+            }
+            if(visibleEnd == rayStart)
+                continue;
+
+            int k = rayStart;
+            for(int s = 0; s < SensingStencil.SAMPLES_PER_RAY; ++s){
+                float sampleDistance = visibleDistance * (s + (ray + 0.5f) / SensingStencil.RAYS_PER_PARTITION) / SensingStencil.SAMPLES_PER_RAY;
+                while(k + 1 < visibleEnd && stencil.getDistance(k + 1) <= sampleDistance)
+                    ++k;
+
+                int sampleRow = row + stencil.getRowOffset(k);
+                int sampleColumn = column + stencil.getColumnOffset(k);
+                ++sampleCount;
+                if(addSample(
+                        i, result,
+                        (sampleColumn + 0.5f) * cellSize, (sampleRow + 0.5f) * cellSize,
+                        world.getCellIndex(sampleRow, sampleColumn),
+                        sampleDistance
+                ))
+                    return;
+            }
+        }
+
+        if(sampleCount > 0)
+            result.averageSampleDistance /= sampleCount;
+    }
+
+    /**
+     * Method that senses a view partition through the summed area tables of the world. The
+     * partition is seen up to the first wall in its middle, that part is split into bands by
+     * distance and every band is covered by a square of the same area around its middle. Each
+     * band counts as many samples as random points of sampling would land in it, with the
+     * average pheromone of its square, so the cost doesn't depend on the view range
+     *
+     * @param i index of the ant
+     * @param result result of the partition, its angle offset has to be set
+     * @param scratch buffers of the current thread
+     */
+    private void sensePartitionWithSummedAreas(int i, SampleResult result, SensingScratch scratch){
+        AntPopulation ants = population;
+
+        float angle = ants.currentAngle[i] + result.angleOffset;
+        setDirection(angle, scratch);
+        float directionX = scratch.directionX;
+        float directionY = scratch.directionY;
+        float visibleDistance = world.getFirstCollision(ants.x[i], ants.y[i], directionX, directionY, ANT_VIEW_RANGE,
+                scratch.collision).getDistance();
+        result.averageSampleDistance = visibleDistance / 2f;
+
+        if (ants.goal[i] == RETURN_TO_COLONY || ants.goal[i] == REPEL_FROM_TRAIL) {
+            float colonyDeltaX = colony.getPosition().x - ants.x[i];
+            float colonyDeltaY = colony.getPosition().y - ants.y[i];
+            float colonyDistance = (float) Math.sqrt(colonyDeltaX * colonyDeltaX + colonyDeltaY * colonyDeltaY);
+            if(colonyDistance <= visibleDistance &&
+                    colonyDeltaX * directionX + colonyDeltaY * directionY >= colonyDistance * COS_HALF_DELTA_FIELD_OF_VIEW){
+                result.setGoalPoint(colony.getPosition().x, colony.getPosition().y);
+                return;
+            }
+        }
+
+        float cellSize = world.getCellSize();
+        float sampleCount = TOTAL_SAMPLE_COUNT / 3;
+        for(int band = 0; band < SUMMED_AREA_BAND_COUNT; ++band){
+            float bandStart = ANT_VIEW_RANGE * band / SUMMED_AREA_BAND_COUNT;
+            float bandEnd = Math.min(ANT_VIEW_RANGE * (band + 1) / SUMMED_AREA_BAND_COUNT, visibleDistance);
+            if(bandStart >= bandEnd)
+                break;
+
+            float bandMiddle = (bandStart + bandEnd) / 2f;
+            float halfSide = Math.max(
+                    (float) Math.sqrt(ANT_DELTA_FIELD_OF_VIEW / 2f * (bandEnd * bandEnd - bandStart * bandStart)) / 2f,
+                    cellSize / 2f
+            );
+            float middleX = ants.x[i] + directionX * bandMiddle;
+            float middleY = ants.y[i] + directionY * bandMiddle;
+            int startRow = (int) Math.floor((middleY - halfSide) / cellSize);
+            int startColumn = (int) Math.floor((middleX - halfSide) / cellSize);
+            int endRow = (int) Math.floor((middleY + halfSide) / cellSize) + 1;
+            int endColumn = (int) Math.floor((middleX + halfSide) / cellSize) + 1;
+
+            float bandWeight = sampleCount * (bandEnd - bandStart) / visibleDistance / ((endRow - startRow) * (endColumn - startColumn));
+            if (ants.goal[i] == LOOK_FOR_FOOD) {
+                result.pheromoneIntensity += bandWeight * world.getPheromoneSum(
+                        startRow, startColumn, endRow, endColumn, AntPheromone.TO_FOOD, colony.getColonyIndex());
+                result.repellentIntensity += bandWeight * world.getPheromoneSum(
+                        startRow, startColumn, endRow, endColumn, AntPheromone.REPELLENT, colony.getColonyIndex());
+            } else if (ants.goal[i] == RETURN_TO_COLONY || ants.goal[i] == REPEL_FROM_TRAIL) {
+                result.pheromoneIntensity += bandWeight * world.getPheromoneSum(
+                        startRow, startColumn, endRow, endColumn, AntPheromone.TO_COLONY, colony.getColonyIndex());
+            }
+        }
+    }
+
+    /**
+     * Method that adds a sampled point to the result of a partition
+     *
+     * @param i index of the ant
+     * @param result result of the partition
+     * @param sampleX x coordinate of the point
+     * @param sampleY y coordinate of the point
+     * @param sampleCellIndex index of the cell of the point
+     * @param sampleDistance distance from the ant to the point
+     * @return true if the point is a goal and sensing can stop
+     */
+    private boolean addSample(int i, SampleResult result, float sampleX, float sampleY, int sampleCellIndex,
+                              float sampleDistance){
+        AntPopulation ants = population;
+
+        // Distance to samples goes into calculation of score for this partition
+        result.averageSampleDistance += sampleDistance;
+
+        if (ants.goal[i] == LOOK_FOR_FOOD) {
+            result.pheromoneIntensity += world.getPheromoneOnCell(sampleCellIndex, AntPheromone.TO_FOOD, colony.getColonyIndex());
+            result.repellentIntensity += world.getPheromoneOnCell(sampleCellIndex, AntPheromone.REPELLENT, colony.getColonyIndex());
+
+        } else if (ants.goal[i] == RETURN_TO_COLONY || ants.goal[i] == REPEL_FROM_TRAIL) {
+            if (arePointsInRangeOfEachOther(sampleX, sampleY, colony.getPosition().x, colony.getPosition().y, ANT_PICKUP_RANGE)) {
+                result.setGoalPoint(sampleX, sampleY);
+                return true;
+            }
+
+            result.pheromoneIntensity += world.getPheromoneOnCell(sampleCellIndex, AntPheromone.TO_COLONY, colony.getColonyIndex());
+        }
+        return false;
     }
 
     /**
      * Method that simply moves the ant after making sure he will not run into a wall
      *
+     * @param i index of the ant
      * @param deltaTime time passed since last frame
+     * @param editBuffer buffer through which the ant changes the world
+     * @param scratch buffers of the current thread
      */
-    private void updatePosition(float deltaTime){
+    private void updatePosition(int i, float deltaTime, WorldEditBuffer editBuffer, SensingScratch scratch){
+        AntPopulation ants = population;
+
         // Degrade pheromones even if not repelling simply for walking over them
-        if(goal == AntGoal.REPEL_FROM_TRAIL)
-            world.degradePheromone(position, 0.5f);
+        int cellIndex = world.getCellIndex(ants.x[i], ants.y[i]);
+        if(ants.goal[i] == REPEL_FROM_TRAIL)
+            editBuffer.degradePheromone(cellIndex, 0.5f);
         else
-            world.degradePheromone(position, 0.99f);
+            editBuffer.degradePheromone(cellIndex, 0.99f);
 
-        Collision collision = world.getFirstCollision(
-                position,
-                moveDirection.getCurrentAngle(),
-                5f
-        );
+        // Fixed point vectors come from the tables, the angle would only compute them again
+        Collision collision = ants.isFixedPointHeading ?
+                world.getFirstCollision(ants.x[i], ants.y[i], ants.currentVectorX[i], ants.currentVectorY[i], 5f, scratch.collision) :
+                world.getFirstCollision(ants.x[i], ants.y[i], ants.currentAngle[i], 5f, scratch.collision);
 
         // Update target so ant doesn't hit wall
-        if(collision.getNormalVector() != null){
-            Vector2 collisionVector = new Vector2(moveDirection.getCurrentVector());
-            collisionVector.x *= collision.getNormalVector().x != 0f ? -1f : 1f;
-            collisionVector.y *= collision.getNormalVector().y != 0f ? -1f : 1f;
-
-            moveDirection.setGoalPoint(null);
-            moveDirection.setTargetVector(collisionVector);
-
-            Vector2 averageVector = new Vector2(collisionVector);
-            averageVector.add(moveDirection.getTargetVector());
-            averageVector.nor();
-            moveDirection.setCurrentVector(averageVector);
+        if(collision.isWallHit()){
+            float collisionVectorX = ants.currentVectorX[i] * (collision.getNormalX() != 0f ? -1f : 1f);
+            float collisionVectorY = ants.currentVectorY[i] * (collision.getNormalY() != 0f ? -1f : 1f);
 
+            MoveDirection.clearGoalPoint(ants, i);
+            MoveDirection.setTargetVector(ants, i, collisionVectorX, collisionVectorY);
+            MoveDirection.setCurrentVector(ants, i, collisionVectorX, collisionVectorY);
         }
 
-        position.x += moveDirection.getCurrentVector().x * MOVE_SPEED * deltaTime;
-        position.y += moveDirection.getCurrentVector().y * MOVE_SPEED * deltaTime;
+        ants.x[i] += ants.currentVectorX[i] * MOVE_SPEED * deltaTime;
+        ants.y[i] += ants.currentVectorY[i] * MOVE_SPEED * deltaTime;
     }
 
     /**
      * Method that checks if ant is close enough to his goal and if that goal is still valid
+     *
+     * @param i index of the ant
+     * @param editBuffer buffer through which the ant changes the world and its colony
+     * @param scratch buffers of the current thread
      */
-    private void checkGoal(){
-        if(moveDirection.getGoalPoint() == null || !isAntInRangeOfPoint(moveDirection.getGoalPoint()))
+    private void checkGoal(int i, WorldEditBuffer editBuffer, SensingScratch scratch){
+        AntPopulation ants = population;
+
+        if(!ants.hasGoalPoint[i] ||
+                !arePointsInRangeOfEachOther(ants.x[i], ants.y[i], ants.goalPointX[i], ants.goalPointY[i], ANT_PICKUP_RANGE))
             return;
 
-        if(goal == AntGoal.LOOK_FOR_FOOD){
-            if(!world.isFoodOnPoint(moveDirection.getGoalPoint())) {
-                moveDirection.setGoalPoint(null);
+        if(ants.goal[i] == LOOK_FOR_FOOD){
+            int goalCellIndex = world.getCellIndex(ants.goalPointX[i], ants.goalPointY[i]);
+            if(!world.isFoodOnCell(goalCellIndex)) {
+                MoveDirection.clearGoalPoint(ants, i);
                 return;
             }
 
-            foodHoldingAmount = world.takeFood(moveDirection.getGoalPoint(), MAX_FOOD_CARRY);
-
-            boolean isFoodLeft = false;
-            // Sample random points and start repelling if you don't see any more food
-            for (SamplePoint samplePoint : getSamplePoints(
-                    90,
-                    ANT_FIELD_OF_VIEW,
-                    ANT_VIEW_RANGE / 2f,
-                    0f)){
-                if (world.isFoodOnPoint(samplePoint.point)) {
-                    isFoodLeft = true;
-                    break;
-                }
-            }
+            ants.foodHoldingAmount[i] = editBuffer.takeFood(i, goalCellIndex, MAX_FOOD_CARRY);
+
+            // Start repelling if the food source is used up, a deferred take isn't applied yet
+            int foodLeft = world.getFoodLeftInSource(goalCellIndex);
+            if(editBuffer.isDeferred())
+                foodLeft -= ants.foodHoldingAmount[i];
+            boolean isFoodLeft = foodLeft > 0;
 
             if(!isFoodLeft) {
-                goal = AntGoal.REPEL_FROM_TRAIL;
-                pheromone = null;
-                pheromoneIntensity = World.MAX_REPELLENT_INTENSITY;
-                world.setPheromone(position, AntPheromone.REPELLENT, pheromoneIntensity, colony.getColonyIndex());
+                ants.goal[i] = REPEL_FROM_TRAIL;
+                ants.pheromone[i] = AntPopulation.NO_PHEROMONE;
+                ants.pheromoneIntensity[i] = World.MAX_REPELLENT_INTENSITY;
+                editBuffer.setPheromone(
+                        world.getCellIndex(ants.x[i], ants.y[i]),
+                        AntPheromone.REPELLENT,
+                        ants.pheromoneIntensity[i],
+                        colony.getColonyIndex()
+                );
             } else{
-                goal = AntGoal.RETURN_TO_COLONY;
-                pheromone = AntPheromone.TO_FOOD;
-                pheromoneIntensity = World.MAX_PHEROMONE_INTENSITY;
+                ants.goal[i] = RETURN_TO_COLONY;
+                ants.pheromone[i] = (byte) AntPheromone.TO_FOOD.ordinal();
+                ants.pheromoneIntensity[i] = World.MAX_PHEROMONE_INTENSITY;
             }
 
         }else {
-            colony.addFood(foodHoldingAmount);
-            foodHoldingAmount = 0;
+            editBuffer.addFood(ants.foodHoldingAmount[i]);
+            ants.foodHoldingAmount[i] = 0;
 
-            goal = AntGoal.LOOK_FOR_FOOD;
-            pheromone = AntPheromone.TO_COLONY;
-            pheromoneIntensity = World.MAX_PHEROMONE_INTENSITY;
+            ants.goal[i] = LOOK_FOR_FOOD;
+            ants.pheromone[i] = (byte) AntPheromone.TO_COLONY.ordinal();
+            ants.pheromoneIntensity[i] = World.MAX_PHEROMONE_INTENSITY;
         }
 
-        moveDirection.setGoalPoint(null);
-        moveDirection.setCurrentVector(moveDirection.getCurrentVectorOpposite());
-        moveDirection.setTargetVector(moveDirection.getCurrentVectorOpposite());
+        // Turn around, the target stays in the old direction which leaves the ant without rotation
+        float previousVectorX = ants.currentVectorX[i];
+        float previousVectorY = ants.currentVectorY[i];
+        MoveDirection.clearGoalPoint(ants, i);
+        MoveDirection.setCurrentVector(ants, i, -previousVectorX, -previousVectorY);
+        MoveDirection.setTargetVector(ants, i, previousVectorX, previousVectorY);
+    }
+
+    /**
+     * Method that sets the goal point of the ant to the closest food in its view, food hidden
+     * behind a wall isn't seen
+     *
+     * @param i index of the ant
+     * @return true if the ant sees food
+     */
+    private boolean setFoodGoalPoint(int i){
+        AntPopulation ants = population;
+
+        int foodCellIndex = world.findNearestFood(ants.x[i], ants.y[i], ants.currentAngle[i], ANT_FIELD_OF_VIEW, ANT_VIEW_RANGE);
+        if(foodCellIndex == -1)
+            return false;
+
+        float foodX = (world.getCellColumn(foodCellIndex) + 0.5f) * world.getCellSize();
+        float foodY = (world.getCellRow(foodCellIndex) + 0.5f) * world.getCellSize();
+        MoveDirection.setGoalPoint(ants, i, foodX, foodY);
+        MoveDirection.setTargetPoint(ants, i, foodX, foodY);
+        return true;
     }
 
     /**
-     * Method that gets a number of random points in front of the ant sampling
+     * Method that finds the unit vector of an angle, from the heading tables when the population
+     * uses fixed point heading
      *
+     * @param angle angle in radians
+     * @param scratch buffers of the current thread the vector is written into
+     */
+    private void setDirection(float angle, SensingScratch scratch){
+        if(population.isFixedPointHeading){
+            int heading = MoveDirection.getHeading(angle);
+            scratch.directionX = MoveDirection.getHeadingVectorX(heading);
+            scratch.directionY = MoveDirection.getHeadingVectorY(heading);
+        }else{
+            scratch.directionX = (float) Math.cos(angle);
+            scratch.directionY = (float) Math.sin(angle);
+        }
+    }
+
+    /**
+     * Method that gets a number of random points in front of the ant sampling, the points are
+     * written into the sample buffers of the scratch
+     *
+     * @param i index of the ant
      * @param sampleCount number of points to generate
      * @param fieldOfView angle under which points must fall
      * @param viewRange max distance from ant to point
      * @param angleOffset angle offset for partition sample points generation
-     * @return list of generated points
+     * @param scratch buffers of the current thread
+     * @return number of generated points
      */
-    private List<SamplePoint> getSamplePoints(int sampleCount, float fieldOfView, float viewRange, float angleOffset){
-        List<SamplePoint> pointList = new ArrayList<>();
-
-        for(int i = 0; i < sampleCount; ++i){
-            float angle = moveDirection.getCurrentAngle() + (float) Math.random() * fieldOfView - fieldOfView / 2 + angleOffset;
-
-            viewRange = world.getFirstCollision(position, angle, viewRange).getDistance();
-            float scalar = (float) Math.random() * viewRange;
-
-            Point2D.Float point =  new Point2D.Float(
-                    (float) Math.cos(angle) * scalar + position.x,
-                    (float) Math.sin(angle) * scalar + position.y
-            );
-
-            if(!world.isPointOutOfBounds(point))
-                pointList.add(new SamplePoint(point, scalar));
+    private int getSamplePoints(int i, int sampleCount, float fieldOfView, float viewRange, float angleOffset,
+                                SensingScratch scratch){
+        AntPopulation ants = population;
+        int pointCount = 0;
+
+        // Random numbers are drawn in the same order as when every ray was cast on its own
+        for(int j = 0; j < sampleCount; ++j){
+            float angle = ants.currentAngle[i] + AntRandom.nextFloat(ants, i) * fieldOfView - fieldOfView / 2 + angleOffset;
+
+            setDirection(angle, scratch);
+            scratch.rayDirectionX[j] = scratch.directionX;
+            scratch.rayDirectionY[j] = scratch.directionY;
+            scratch.rayHeadingBucket[j] = VisibilityCache.getHeadingBucket(angle);
+            scratch.rayDistanceFraction[j] = AntRandom.nextFloat(ants, i);
         }
-        return pointList;
-    }
 
-    private boolean isAntInRangeOfPoint(Point2D.Float point){
-        return arePointsInRangeOfEachOther(position, point, ANT_PICKUP_RANGE);
+        VisibilityCache visibilityCache = world.getVisibilityCache();
+        if(visibilityCache != null && !world.isPointOutOfBounds(ants.x[i], ants.y[i]))
+            visibilityCache.getViewRanges(world.getCellIndex(ants.x[i], ants.y[i]), scratch.rayHeadingBucket, sampleCount,
+                    scratch.rayDistance);
+        else
+            world.castRays(ants.x[i], ants.y[i], scratch.rayDirectionX, scratch.rayDirectionY, sampleCount, viewRange,
+                    scratch.rayDistance, scratch.rayNormalAxis);
+
+        for(int j = 0; j < sampleCount; ++j){
+            // A wall seen by a ray shortens the view range of the following samples
+            viewRange = Math.min(viewRange, scratch.rayDistance[j]);
+            float scalar = scratch.rayDistanceFraction[j] * viewRange;
+
+            float pointX = scratch.rayDirectionX[j] * scalar + ants.x[i];
+            float pointY = scratch.rayDirectionY[j] * scalar + ants.y[i];
+
+            if(!world.isPointOutOfBounds(pointX, pointY)) {
+                scratch.sampleX[pointCount] = pointX;
+                scratch.sampleY[pointCount] = pointY;
+                scratch.sampleDistance[pointCount] = scalar;
+                ++pointCount;
+            }
+        }
+        return pointCount;
     }
 
-    private boolean arePointsInRangeOfEachOther(Point2D.Float pointA, Point2D.Float pointB, float radius) {
-        return pointA.x <= pointB.x + radius && pointA.x >= pointB.x - radius &&
-                pointA.y <= pointB.y + radius && pointA.y >= pointB.y - radius;
+    private boolean arePointsInRangeOfEachOther(float pointAX, float pointAY, float pointBX, float pointBY, float radius) {
+        return pointAX <= pointBX + radius && pointAX >= pointBX - radius &&
+                pointAY <= pointBY + radius && pointAY >= pointBY - radius;
     }
 
     /**
@@ -307,12 +671,26 @@ public class Ant {
         float angleOffset;
         float pheromoneIntensity;
         float repellentIntensity;
-        Point2D.Float goalPoint;
+        boolean hasGoalPoint;
+        float goalPointX;
+        float goalPointY;
         float averageSampleDistance;
         float score;
 
-        SampleResult(float angleOffset){
+        SampleResult reset(float angleOffset){
             this.angleOffset = angleOffset;
+            pheromoneIntensity = 0f;
+            repellentIntensity = 0f;
+            hasGoalPoint = false;
+            averageSampleDistance = 0f;
+            score = 0f;
+            return this;
+        }
+
+        void setGoalPoint(float goalPointX, float goalPointY){
+            hasGoalPoint = true;
+            this.goalPointX = goalPointX;
+            this.goalPointY = goalPointY;
         }
 
         void calculateScore() {
@@ -321,29 +699,118 @@ public class Ant {
     }
 
     /**
-     * Class that wraps a world point and the distance between it and the ant
+     * Class that remembers the results of stencil sensing for a range of ants stepped together.
+     * Stencil sensing only depends on the cell, the stencil heading and the goal of an ant, so
+     * ants that share them sense exactly the same pheromones, the first of them senses and the
+     * others take its result. Edits of the ants are only applied after the range, so results
+     * stay valid until the memo is cleared for the next range
      */
-    private static class SamplePoint{
-        Point2D.Float point;
-        float distance;
+    private static class SensingMemo{
+        // Twice the ants of a range, so probe sequences stay short
+        private static final int CAPACITY_SHIFT = 9;
+        private static final int CAPACITY = 1 << CAPACITY_SHIFT;
+        private static final int MAX_SIZE = CAPACITY / 2;
+
+        // An entry is stored if its generation is the current one, clearing only moves to the next
+        private final long[] keys = new long[CAPACITY];
+        private final int[] generations = new int[CAPACITY];
+        private final boolean[] hasGoalPoint = new boolean[CAPACITY];
+        private final float[] goalPointX = new float[CAPACITY];
+        private final float[] goalPointY = new float[CAPACITY];
+        private final float[] pheromoneIntensity = new float[CAPACITY];
+        private final float[] repellentIntensity = new float[CAPACITY];
+        private final float[] angleOffset = new float[CAPACITY];
+        private int generation = 1;
+        private int size;
+
+        int hitCount;
+        int lookupCount;
+
+        static long getKey(int cellIndex, int heading, byte goal){
+            return ((long) cellIndex * SensingStencil.HEADING_COUNT + heading) * GOALS_PER_KEY + goal;
+        }
 
-        SamplePoint(Point2D.Float point, float distance){
-            this.point = point;
-            this.distance = distance;
+        void clear(){
+            clearEntries();
+            hitCount = 0;
+            lookupCount = 0;
         }
 
-    }
+        private void clearEntries(){
+            if(++generation == 0){
+                Arrays.fill(generations, 0);
+                generation = 1;
+            }
+            size = 0;
+        }
 
-    public Point2D.Float getPosition() {
-        return position;
-    }
+        /**
+         * @param key key of the cell, heading and goal
+         * @param result result the remembered sensing is copied into
+         * @return true if the sensing was remembered
+         */
+        boolean get(long key, SampleResult result){
+            ++lookupCount;
+            int slot = findSlot(key);
+            if(generations[slot] != generation)
+                return false;
+
+            ++hitCount;
+            if(hasGoalPoint[slot])
+                result.setGoalPoint(goalPointX[slot], goalPointY[slot]);
+            result.pheromoneIntensity = pheromoneIntensity[slot];
+            result.repellentIntensity = repellentIntensity[slot];
+            result.angleOffset = angleOffset[slot];
+            return true;
+        }
+
+        void put(long key, SampleResult result){
+            // Ranges longer than a chunk start over when the memo fills up
+            if(size == MAX_SIZE)
+                clearEntries();
+
+            int slot = findSlot(key);
+            generations[slot] = generation;
+            keys[slot] = key;
+            hasGoalPoint[slot] = result.hasGoalPoint;
+            goalPointX[slot] = result.goalPointX;
+            goalPointY[slot] = result.goalPointY;
+            pheromoneIntensity[slot] = result.pheromoneIntensity;
+            repellentIntensity[slot] = result.repellentIntensity;
+            angleOffset[slot] = result.angleOffset;
+            ++size;
+        }
 
-    public MoveDirection getMoveDirection() {
-        return moveDirection;
+        // Slot holding the key, or the free slot it would go into
+        private int findSlot(long key){
+            int slot = (int) (key * 0x9E3779B97F4A7C15L >>> (64 - CAPACITY_SHIFT));
+            while(generations[slot] == generation && keys[slot] != key)
+                slot = (slot + 1) & (CAPACITY - 1);
+
+            return slot;
+        }
     }
 
-    public boolean isHoldingFood(){
-        return foodHoldingAmount > 0;
+    /**
+     * Class with the buffers a thread reuses while stepping ants so sensing doesn't allocate
+     */
+    private static class SensingScratch{
+        final float[] sampleX = new float[MAX_SAMPLE_COUNT];
+        final float[] sampleY = new float[MAX_SAMPLE_COUNT];
+        final float[] sampleDistance = new float[MAX_SAMPLE_COUNT];
+        final float[] rayDirectionX = new float[MAX_SAMPLE_COUNT];
+        final float[] rayDirectionY = new float[MAX_SAMPLE_COUNT];
+        final int[] rayHeadingBucket = new int[MAX_SAMPLE_COUNT];
+        final float[] rayDistanceFraction = new float[MAX_SAMPLE_COUNT];
+        final float[] rayDistance = new float[MAX_SAMPLE_COUNT];
+        final byte[] rayNormalAxis = new byte[MAX_SAMPLE_COUNT];
+        final Collision collision = new Collision();
+        // Unit vector of the last angle passed to setDirection
+        float directionX;
+        float directionY;
+        final SampleResult partitionSampleResult = new SampleResult();
+        final SampleResult totalSampleResult = new SampleResult();
+        final SensingMemo sensingMemo = new SensingMemo();
     }
 
 }
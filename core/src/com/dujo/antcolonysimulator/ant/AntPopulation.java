@@ -0,0 +1,330 @@
+package com.dujo.antcolonysimulator.ant;
+
+import com.dujo.antcolonysimulator.world.World;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class that stores the state of all ants of a colony in parallel primitive arrays, the ant
+ * with index i is described by element i of every array
+ */
+public class AntPopulation {
+    public static final byte NO_PHEROMONE = -1;
+    private static final AntGoal[] GOALS = AntGoal.values();
+    // Bytes of state per ant, 15 float arrays, a long array, an int array and 3 byte arrays
+    private static final int ANT_STATE_SIZE = 15 * 4 + 8 + 4 + 3;
+
+    private final int capacity;
+    private int size;
+    // Seed the random stream of every ant is derived from
+    private final long seed;
+
+    // Position, and the position before the last step for interpolated rendering
+    final float[] x;
+    final float[] y;
+    final float[] previousX;
+    final float[] previousY;
+
+    // Headings snap to the steps of MoveDirection and turn with integer arithmetic, see MoveDirection
+    boolean isFixedPointHeading;
+
+    // Current and target heading, kept both as an angle and as a unit vector
+    final float[] currentAngle;
+    final float[] currentVectorX;
+    final float[] currentVectorY;
+    final float[] targetAngle;
+    final float[] targetVectorX;
+    final float[] targetVectorY;
+
+    // Point the ant is walking straight towards, if any
+    final boolean[] hasGoalPoint;
+    final float[] goalPointX;
+    final float[] goalPointY;
+
+    final byte[] goal;
+    final byte[] pheromone;
+    final float[] pheromoneIntensity;
+    final int[] foodHoldingAmount;
+
+    // Time passed since the cooldowns were last reset
+    final float[] rotationCooldown;
+    final float[] pheromoneDropCooldown;
+
+    // State of the random stream of each ant, see AntRandom
+    final long[] randomState;
+
+    public AntPopulation(int capacity){
+        this(capacity, 0L);
+    }
+
+    /**
+     * @param capacity max number of ants
+     * @param seed seed of the population, the ant with index i always gets the same random
+     *             stream for the same seed
+     */
+    public AntPopulation(int capacity, long seed){
+        this.capacity = capacity;
+        this.seed = seed;
+
+        x = new float[capacity];
+        y = new float[capacity];
+        previousX = new float[capacity];
+        previousY = new float[capacity];
+
+        currentAngle = new float[capacity];
+        currentVectorX = new float[capacity];
+        currentVectorY = new float[capacity];
+        targetAngle = new float[capacity];
+        targetVectorX = new float[capacity];
+        targetVectorY = new float[capacity];
+
+        hasGoalPoint = new boolean[capacity];
+        goalPointX = new float[capacity];
+        goalPointY = new float[capacity];
+
+        goal = new byte[capacity];
+        pheromone = new byte[capacity];
+        pheromoneIntensity = new float[capacity];
+        foodHoldingAmount = new int[capacity];
+
+        rotationCooldown = new float[capacity];
+        pheromoneDropCooldown = new float[capacity];
+
+        randomState = new long[capacity];
+    }
+
+    /**
+     * Method that adds a new ant looking for food
+     *
+     * @param spawnX x coordinate of the spawn point
+     * @param spawnY y coordinate of the spawn point
+     * @param spawnAngle angle the ant is facing
+     * @return index of the new ant, -1 if the population is full
+     */
+    public int addAnt(float spawnX, float spawnY, float spawnAngle){
+        if(size == capacity)
+            return -1;
+
+        int i = size++;
+
+        x[i] = spawnX;
+        y[i] = spawnY;
+        previousX[i] = spawnX;
+        previousY[i] = spawnY;
+
+        MoveDirection.setCurrentAngle(this, i, spawnAngle);
+        MoveDirection.setTargetAngle(this, i, spawnAngle);
+        hasGoalPoint[i] = false;
+
+        goal[i] = (byte) AntGoal.LOOK_FOR_FOOD.ordinal();
+        pheromone[i] = (byte) AntPheromone.TO_COLONY.ordinal();
+        pheromoneIntensity[i] = World.MAX_PHEROMONE_INTENSITY;
+        foodHoldingAmount[i] = 0;
+
+        rotationCooldown[i] = 0f;
+        pheromoneDropCooldown[i] = 0f;
+
+        randomState[i] = AntRandom.getStreamSeed(seed, i);
+
+        return i;
+    }
+
+    /**
+     * Method that remembers the current positions of all ants, called before every step
+     */
+    public void storePreviousPositions(){
+        System.arraycopy(x, 0, previousX, 0, size);
+        System.arraycopy(y, 0, previousY, 0, size);
+    }
+
+    /**
+     * Method that gets the number of bytes writeState writes for the current ants
+     *
+     * @return size of the state in bytes
+     */
+    public int getStateSize(){
+        return 4 + size * ANT_STATE_SIZE;
+    }
+
+    /**
+     * Method that writes the state of all ants into a buffer, one array after another
+     *
+     * @param buffer little endian buffer with at least getStateSize bytes remaining
+     */
+    public void writeState(ByteBuffer buffer){
+        buffer.putInt(size);
+
+        putFloats(buffer, x);
+        putFloats(buffer, y);
+        putFloats(buffer, previousX);
+        putFloats(buffer, previousY);
+        putFloats(buffer, currentAngle);
+        putFloats(buffer, currentVectorX);
+        putFloats(buffer, currentVectorY);
+        putFloats(buffer, targetAngle);
+        putFloats(buffer, targetVectorX);
+        putFloats(buffer, targetVectorY);
+        putFloats(buffer, goalPointX);
+        putFloats(buffer, goalPointY);
+        putFloats(buffer, pheromoneIntensity);
+        putFloats(buffer, rotationCooldown);
+        putFloats(buffer, pheromoneDropCooldown);
+
+        buffer.asLongBuffer().put(randomState, 0, size);
+        buffer.position(buffer.position() + size * 8);
+
+        buffer.asIntBuffer().put(foodHoldingAmount, 0, size);
+        buffer.position(buffer.position() + size * 4);
+
+        buffer.put(goal, 0, size);
+        buffer.put(pheromone, 0, size);
+        for(int i = 0; i < size; ++i)
+            buffer.put(hasGoalPoint[i] ? (byte) 1 : (byte) 0);
+    }
+
+    /**
+     * Method that replaces all ants with the ones written by writeState
+     *
+     * @param buffer little endian buffer positioned at the state
+     */
+    public void readState(ByteBuffer buffer){
+        int stateSize = buffer.getInt();
+        if(stateSize > capacity)
+            throw new IllegalArgumentException("State holds " + stateSize + " ants, capacity is " + capacity);
+        size = stateSize;
+
+        getFloats(buffer, x);
+        getFloats(buffer, y);
+        getFloats(buffer, previousX);
+        getFloats(buffer, previousY);
+        getFloats(buffer, currentAngle);
+        getFloats(buffer, currentVectorX);
+        getFloats(buffer, currentVectorY);
+        getFloats(buffer, targetAngle);
+        getFloats(buffer, targetVectorX);
+        getFloats(buffer, targetVectorY);
+        getFloats(buffer, goalPointX);
+        getFloats(buffer, goalPointY);
+        getFloats(buffer, pheromoneIntensity);
+        getFloats(buffer, rotationCooldown);
+        getFloats(buffer, pheromoneDropCooldown);
+
+        buffer.asLongBuffer().get(randomState, 0, size);
+        buffer.position(buffer.position() + size * 8);
+
+        buffer.asIntBuffer().get(foodHoldingAmount, 0, size);
+        buffer.position(buffer.position() + size * 4);
+
+        buffer.get(goal, 0, size);
+        buffer.get(pheromone, 0, size);
+        for(int i = 0; i < size; ++i)
+            hasGoalPoint[i] = buffer.get() != 0;
+    }
+
+    private void putFloats(ByteBuffer buffer, float[] values){
+        buffer.asFloatBuffer().put(values, 0, size);
+        buffer.position(buffer.position() + size * 4);
+    }
+
+    private void getFloats(ByteBuffer buffer, float[] values){
+        buffer.asFloatBuffer().get(values, 0, size);
+        buffer.position(buffer.position() + size * 4);
+    }
+
+    public boolean isFixedPointHeading() {
+        return isFixedPointHeading;
+    }
+
+    /**
+     * Method that switches between floating point and fixed point heading, ants snap to the
+     * closest heading step the next time they turn
+     *
+     * @param isFixedPointHeading true for fixed point heading
+     */
+    public void setFixedPointHeading(boolean isFixedPointHeading) {
+        this.isFixedPointHeading = isFixedPointHeading;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public float getX(int i) {
+        return x[i];
+    }
+
+    public float getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * Method that gets the x coordinate of an ant between the last two steps
+     *
+     * @param i index of the ant
+     * @param alpha 0 for the position before the last step, 1 for the current position
+     * @return interpolated x coordinate
+     */
+    public float getInterpolatedX(int i, float alpha) {
+        return previousX[i] + (x[i] - previousX[i]) * alpha;
+    }
+
+    public float getInterpolatedY(int i, float alpha) {
+        return previousY[i] + (y[i] - previousY[i]) * alpha;
+    }
+
+    public float getCurrentAngle(int i) {
+        return currentAngle[i];
+    }
+
+    public float getCurrentVectorX(int i) {
+        return currentVectorX[i];
+    }
+
+    public float getCurrentVectorY(int i) {
+        return currentVectorY[i];
+    }
+
+    public AntGoal getGoal(int i) {
+        return GOALS[goal[i]];
+    }
+
+    public void setGoal(int i, AntGoal goal) {
+        this.goal[i] = (byte) goal.ordinal();
+    }
+
+    public float getPheromoneIntensity(int i) {
+        return pheromoneIntensity[i];
+    }
+
+    public boolean isHoldingFood(int i){
+        return foodHoldingAmount[i] > 0;
+    }
+
+    public void setFoodHoldingAmount(int i, int foodHoldingAmount){
+        this.foodHoldingAmount[i] = foodHoldingAmount;
+    }
+
+    /**
+     * Method that sends an ant that was heading home with food it didn't get back to looking
+     * for food, laying the trail to the colony it laid before instead of a trail to food that
+     * isn't there. The ant faces the way it did before turning around, which its target still
+     * holds
+     *
+     * @param i index of the ant
+     * @param pheromoneIntensity intensity of the trail to the colony before the ant took the food
+     */
+    public void cancelFoodPickup(int i, float pheromoneIntensity){
+        if(goal[i] != AntGoal.RETURN_TO_COLONY.ordinal())
+            return;
+
+        goal[i] = (byte) AntGoal.LOOK_FOR_FOOD.ordinal();
+        pheromone[i] = (byte) AntPheromone.TO_COLONY.ordinal();
+        this.pheromoneIntensity[i] = pheromoneIntensity;
+        MoveDirection.setCurrentVector(this, i, targetVectorX[i], targetVectorY[i]);
+    }
+
+}
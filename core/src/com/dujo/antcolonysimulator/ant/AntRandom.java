@@ -0,0 +1,45 @@
+package com.dujo.antcolonysimulator.ant;
+
+/**
+ * Class with the random number generator of ants, every ant has its own SplitMix64 stream kept
+ * in its AntPopulation. Streams don't share any state, so ants stepped on different threads
+ * never contend and an ant draws the same numbers no matter which thread steps it
+ */
+public final class AntRandom {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final float FLOAT_UNIT = 1f / (1 << 24);
+
+    private AntRandom(){
+    }
+
+    /**
+     * Method that derives the seed of a stream from a parent seed, streams of different indices
+     * start at unrelated points of the sequence
+     *
+     * @param seed parent seed
+     * @param streamIndex index of the stream, for example the index of the ant
+     * @return seed of the stream
+     */
+    public static long getStreamSeed(long seed, long streamIndex){
+        return mix(seed + (streamIndex + 1) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Method that gets a uniformly distributed value from the stream of an ant
+     *
+     * @param population population of the ant
+     * @param i index of the ant
+     * @return value in [0, 1)
+     */
+    public static float nextFloat(AntPopulation population, int i){
+        long state = population.randomState[i] + GOLDEN_GAMMA;
+        population.randomState[i] = state;
+        return (mix(state) >>> 40) * FLOAT_UNIT;
+    }
+
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,100 +1,232 @@
 package com.dujo.antcolonysimulator.ant;
 
-import com.badlogic.gdx.math.Vector2;
-
-import java.awt.geom.Point2D;
-
-public class MoveDirection {
-    private float currentAngle;
-    private float targetAngle;
-    private Vector2 currentVector;
-    private Vector2 targetVector;
-    private Point2D.Float goalPoint;
-
-    public MoveDirection(){
-        currentVector = new Vector2(
-                (float) Math.cos(currentAngle),
-                (float) Math.sin(currentAngle)
-        );
-        currentAngle = currentVector.angleRad();
-
-        targetVector = new Vector2(
-                (float) Math.cos(targetAngle),
-                (float) Math.sin(targetAngle)
-        );
-        targetAngle = targetVector.angleRad();
-    }
-
-    public void rotate(float deltaTime, float rotateSpeed){
-        Vector2 directionNormalVector = new Vector2(-currentVector.y, currentVector.x);
-		float directionDelta = new Vector2(targetVector).dot(directionNormalVector);
+/**
+ * Class with the steering operations on the heading of an ant in an AntPopulation, the current
+ * and target heading of an ant are kept both as an angle and as a unit vector.
+ * <p>
+ * Populations with fixed point heading only face one of HEADING_STEPS evenly spaced headings,
+ * vectors come from lookup tables instead of trigonometry and rotation is done on whole steps
+ * with integer arithmetic. The angles stay stored as floats, always a whole number of steps, so
+ * the rest of the simulation reads both kinds of populations the same way
+ */
+public final class MoveDirection {
+    public static final int HEADING_STEPS = 4096;
+    private static final int HEADING_MASK = HEADING_STEPS - 1;
+    private static final float STEPS_PER_RADIAN = (float) (HEADING_STEPS / (Math.PI * 2.0));
+    private static final float RADIANS_PER_STEP = (float) (Math.PI * 2.0 / HEADING_STEPS);
+
+    // Sines of the steering tables are fractions of 1 << SINE_SHIFT, rotation speeds of 1 << SPEED_SHIFT
+    private static final int SINE_SHIFT = 14;
+    private static final int SPEED_SHIFT = 8;
+    // Tangents from 0 to 1 in ARCTANGENT_COUNT parts, enough for every step of the first octant
+    private static final int ARCTANGENT_COUNT = 1024;
+
+    private static final float[] COSINES = new float[HEADING_STEPS];
+    private static final float[] SINES = new float[HEADING_STEPS];
+    private static final int[] FIXED_SINES = new int[HEADING_STEPS];
+    private static final int[] ARCTANGENTS = new int[ARCTANGENT_COUNT + 1];
+
+    static {
+        for(int heading = 0; heading < HEADING_STEPS; ++heading){
+            double angle = heading * Math.PI * 2.0 / HEADING_STEPS;
+            COSINES[heading] = (float) Math.cos(angle);
+            SINES[heading] = (float) Math.sin(angle);
+            FIXED_SINES[heading] = (int) Math.round(Math.sin(angle) * (1 << SINE_SHIFT));
+        }
+        for(int i = 0; i <= ARCTANGENT_COUNT; ++i)
+            ARCTANGENTS[i] = (int) Math.round(Math.atan((double) i / ARCTANGENT_COUNT) * HEADING_STEPS / (Math.PI * 2.0));
+    }
+
+    private MoveDirection(){
+    }
+
+    public static void rotate(AntPopulation population, int i, float deltaTime, float rotateSpeed){
+        if(population.isFixedPointHeading){
+            rotateFixedPoint(population, i, deltaTime, rotateSpeed);
+            return;
+        }
+
+        // Dot product of target vector and normal of current vector
+        float directionDelta = population.targetVectorX[i] * -population.currentVectorY[i] +
+                population.targetVectorY[i] * population.currentVectorX[i];
         float rotationAngle = rotateSpeed * directionDelta * deltaTime;
 
-        setCurrentAngle(currentAngle + rotationAngle);
+        setCurrentAngle(population, i, population.currentAngle[i] + rotationAngle);
     }
 
-    public float getCurrentAngle(){
-        return currentAngle;
+    /**
+     * Method that rotates on whole heading steps, the same turn as the floating point path since
+     * the sine of the angle between the headings is the cross product of their vectors
+     *
+     * @param population population of the ant
+     * @param i index of the ant
+     * @param deltaTime time passed since the last rotation
+     * @param rotateSpeed rotation speed in radians per second at a right angle to the target
+     */
+    private static void rotateFixedPoint(AntPopulation population, int i, float deltaTime, float rotateSpeed){
+        int currentHeading = getHeading(population.currentAngle[i]);
+        int headingDelta = (getHeading(population.targetAngle[i]) - currentHeading) & HEADING_MASK;
+
+        int stepSpeed = (int) (rotateSpeed * deltaTime * STEPS_PER_RADIAN * (1 << SPEED_SHIFT));
+        // Product in long, with the sine scale it overflows an int once a frame turns more than PI / 4
+        int rotationSteps = (int) (((long) FIXED_SINES[headingDelta] * stepSpeed + (1 << (SINE_SHIFT + SPEED_SHIFT - 1)))
+                >> (SINE_SHIFT + SPEED_SHIFT));
+
+        setCurrentHeading(population, i, currentHeading + rotationSteps);
     }
 
-    public void setCurrentAngle(float currentAngle){
-        currentVector.x = (float) Math.cos(currentAngle);
-        currentVector.y = (float) Math.sin(currentAngle);
-        this.currentAngle = currentVector.angleRad();
+    public static void setCurrentAngle(AntPopulation population, int i, float currentAngle){
+        if(population.isFixedPointHeading){
+            setCurrentHeading(population, i, getHeading(currentAngle));
+            return;
+        }
+
+        float vectorX = (float) Math.cos(currentAngle);
+        float vectorY = (float) Math.sin(currentAngle);
+        population.currentVectorX[i] = vectorX;
+        population.currentVectorY[i] = vectorY;
+        population.currentAngle[i] = (float) Math.atan2(vectorY, vectorX);
     }
 
-    public Vector2 getCurrentVector() {
-        return currentVector;
+    public static void setCurrentVector(AntPopulation population, int i, float vectorX, float vectorY) {
+        float length = (float) Math.sqrt(vectorX * vectorX + vectorY * vectorY);
+        if(length != 0f){
+            vectorX /= length;
+            vectorY /= length;
+        }
+        if(population.isFixedPointHeading){
+            setCurrentHeading(population, i, getHeading(vectorX, vectorY));
+            return;
+        }
+
+        population.currentVectorX[i] = vectorX;
+        population.currentVectorY[i] = vectorY;
+        population.currentAngle[i] = (float) Math.atan2(vectorY, vectorX);
     }
 
-    public void setCurrentVector(Vector2 currentVector) {
-        this.currentVector = currentVector;
-        currentVector.nor();
-        currentAngle = currentVector.angleRad();
+    public static void setTargetAngle(AntPopulation population, int i, float targetAngle) {
+        if(population.isFixedPointHeading){
+            setTargetHeading(population, i, getHeading(targetAngle));
+            return;
+        }
+
+        float vectorX = (float) Math.cos(targetAngle);
+        float vectorY = (float) Math.sin(targetAngle);
+        population.targetVectorX[i] = vectorX;
+        population.targetVectorY[i] = vectorY;
+        population.targetAngle[i] = (float) Math.atan2(vectorY, vectorX);
     }
 
-    public Vector2 getCurrentVectorOpposite(){
-        return new Vector2(currentVector).scl(-1f);
+    public static void setTargetVector(AntPopulation population, int i, float vectorX, float vectorY) {
+        float length = (float) Math.sqrt(vectorX * vectorX + vectorY * vectorY);
+        if(length != 0f){
+            vectorX /= length;
+            vectorY /= length;
+        }
+        if(population.isFixedPointHeading){
+            setTargetHeading(population, i, getHeading(vectorX, vectorY));
+            return;
+        }
+
+        population.targetVectorX[i] = vectorX;
+        population.targetVectorY[i] = vectorY;
+        population.targetAngle[i] = (float) Math.atan2(vectorY, vectorX);
     }
 
-    public float getTargetAngle() {
-        return targetAngle;
+    /**
+     * Method that turns the ant towards a point
+     *
+     * @param population population of the ant
+     * @param i index of the ant
+     * @param pointX x coordinate of the point
+     * @param pointY y coordinate of the point
+     */
+    public static void setTargetPoint(AntPopulation population, int i, float pointX, float pointY){
+        setTargetVector(population, i, pointX - population.x[i], pointY - population.y[i]);
     }
 
-    public void setTargetAngle(float targetAngle) {
-        targetVector.x = (float) Math.cos(targetAngle);
-        targetVector.y = (float) Math.sin(targetAngle);
-        this.targetAngle = targetVector.angleRad();
+    public static void setGoalPoint(AntPopulation population, int i, float pointX, float pointY) {
+        population.hasGoalPoint[i] = true;
+        population.goalPointX[i] = pointX;
+        population.goalPointY[i] = pointY;
     }
 
-    public Vector2 getTargetVector() {
-        return targetVector;
+    public static void clearGoalPoint(AntPopulation population, int i) {
+        population.hasGoalPoint[i] = false;
     }
 
-    public void setTargetVector(Vector2 targetVector) {
-        this.targetVector = targetVector;
-        targetVector.nor();
-        targetAngle = targetVector.angleRad();
+    public static void setRandomTarget(AntPopulation population, int i){
+        if(AntRandom.nextFloat(population, i) > 0.5f)
+            setTargetAngle(population, i, population.currentAngle[i] + (float)(Math.PI / 6));
+        else
+            setTargetAngle(population, i, population.currentAngle[i] - (float)(Math.PI / 6));
     }
 
-    public void setTargetVector(Point2D.Float pointA, Point2D.Float pointB){
-        Vector2 targetVector = new Vector2(pointB.x - pointA.x, pointB.y - pointA.y);
-        setTargetVector(targetVector);
+    private static void setCurrentHeading(AntPopulation population, int i, int heading){
+        heading &= HEADING_MASK;
+        population.currentVectorX[i] = COSINES[heading];
+        population.currentVectorY[i] = SINES[heading];
+        population.currentAngle[i] = getAngle(heading);
     }
 
-    public Point2D.Float getGoalPoint() {
-        return goalPoint;
+    private static void setTargetHeading(AntPopulation population, int i, int heading){
+        heading &= HEADING_MASK;
+        population.targetVectorX[i] = COSINES[heading];
+        population.targetVectorY[i] = SINES[heading];
+        population.targetAngle[i] = getAngle(heading);
     }
 
-    public void setGoalPoint(Point2D.Float goalPoint) {
-        this.goalPoint = goalPoint;
+    /**
+     * Method that rounds an angle to the closest heading step
+     *
+     * @param angle angle in radians, any number of turns
+     * @return heading step from 0 to HEADING_STEPS - 1
+     */
+    public static int getHeading(float angle){
+        return Math.round(angle * STEPS_PER_RADIAN) & HEADING_MASK;
     }
 
-    public void setRandomTarget(){
-        if(Math.random() > 0.5f)
-            setTargetAngle(currentAngle + (float)(Math.PI / 6));
+    /**
+     * Method that finds the heading step of a vector through the arctangent table, the vector is
+     * mirrored into the first octant so the table only covers tangents from 0 to 1
+     *
+     * @param vectorX x component of the vector
+     * @param vectorY y component of the vector
+     * @return heading step from 0 to HEADING_STEPS - 1, 0 for a zero vector
+     */
+    public static int getHeading(float vectorX, float vectorY){
+        float absoluteX = Math.abs(vectorX);
+        float absoluteY = Math.abs(vectorY);
+        if(absoluteX == 0f && absoluteY == 0f)
+            return 0;
+
+        int heading;
+        if(absoluteX >= absoluteY)
+            heading = ARCTANGENTS[(int) (absoluteY / absoluteX * ARCTANGENT_COUNT + 0.5f)];
         else
-            setTargetAngle(currentAngle - (float)(Math.PI / 6));
+            heading = HEADING_STEPS / 4 - ARCTANGENTS[(int) (absoluteX / absoluteY * ARCTANGENT_COUNT + 0.5f)];
+
+        if(vectorX < 0f)
+            heading = HEADING_STEPS / 2 - heading;
+        if(vectorY < 0f)
+            heading = -heading;
+        return heading & HEADING_MASK;
+    }
+
+    /**
+     * @param heading heading step from 0 to HEADING_STEPS - 1
+     * @return angle of the heading in radians, from -PI to PI like atan2
+     */
+    public static float getAngle(int heading){
+        return (heading > HEADING_STEPS / 2 ? heading - HEADING_STEPS : heading) * RADIANS_PER_STEP;
+    }
+
+    public static float getHeadingVectorX(int heading){
+        return COSINES[heading];
+    }
+
+    public static float getHeadingVectorY(int heading){
+        return SINES[heading];
     }
 
 }
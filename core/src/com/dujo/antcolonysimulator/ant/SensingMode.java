@@ -0,0 +1,7 @@
+package com.dujo.antcolonysimulator.ant;
+
+public enum SensingMode {
+    SAMPLED,
+    STENCIL,
+    SUMMED_AREA
+}
@@ -0,0 +1,146 @@
+package com.dujo.antcolonysimulator.ant;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class that holds the cells ants look at in stencil sensing. For every quantized heading and
+ * view partition a fan of rays is traced once, each ray is stored as the offsets of the cells it
+ * passes from the cell of the ant outwards, together with the distance at which it enters them.
+ * Sensing then only adds offsets to the cell of the ant, without trigonometry or random numbers
+ */
+final class SensingStencil {
+    static final int HEADING_COUNT = 64;
+    static final int RAYS_PER_PARTITION = 8;
+    static final int SAMPLES_PER_RAY = 4;
+
+    private static final int PARTITION_COUNT = (int) Ant.VIEW_PARTITION_COUNT;
+    private static final float HEADING_STEP = (float) (Math.PI * 2.0 / HEADING_COUNT);
+    private static final Map<Float, SensingStencil> STENCILS = new HashMap<>();
+
+    private final float viewRange;
+    // Cells of ray r are at rayStarts[r] to rayStarts[r + 1], rays of a heading and partition are consecutive
+    private final int[] rayStarts;
+    private final int[] rowOffsets;
+    private final int[] columnOffsets;
+    private final float[] distances;
+
+    private SensingStencil(float cellSize){
+        viewRange = Ant.ANT_VIEW_RANGE;
+        int rayCount = HEADING_COUNT * PARTITION_COUNT * RAYS_PER_PARTITION;
+        // A ray enters at most one cell per crossed border, plus the cell it starts in
+        int maxCellsPerRay = 2 * ((int) Math.ceil(viewRange / cellSize) + 1) + 1;
+
+        rayStarts = new int[rayCount + 1];
+        rowOffsets = new int[rayCount * maxCellsPerRay];
+        columnOffsets = new int[rayCount * maxCellsPerRay];
+        distances = new float[rayCount * maxCellsPerRay];
+
+        int cellCount = 0;
+        for(int heading = 0; heading < HEADING_COUNT; ++heading){
+            for(int partition = 0; partition < PARTITION_COUNT; ++partition){
+                // Same partition order as sampling, from the left of the ant to its right
+                float partitionAngle = heading * HEADING_STEP + Ant.ANT_DELTA_FIELD_OF_VIEW - Ant.ANT_DELTA_FIELD_OF_VIEW * partition;
+                for(int ray = 0; ray < RAYS_PER_PARTITION; ++ray){
+                    float angle = partitionAngle + Ant.ANT_DELTA_FIELD_OF_VIEW * ((ray + 0.5f) / RAYS_PER_PARTITION - 0.5f);
+                    rayStarts[getRayIndex(heading, partition, ray)] = cellCount;
+                    cellCount = traceRay(angle, cellSize, cellCount);
+                }
+            }
+        }
+        rayStarts[rayCount] = cellCount;
+    }
+
+    /**
+     * Method that gets the stencil of worlds with a cell size, stencils are built once and shared
+     *
+     * @param cellSize size of the cells of the world
+     * @return stencil of the cell size
+     */
+    static synchronized SensingStencil forCellSize(float cellSize){
+        SensingStencil stencil = STENCILS.get(cellSize);
+        if(stencil == null){
+            stencil = new SensingStencil(cellSize);
+            STENCILS.put(cellSize, stencil);
+        }
+
+        return stencil;
+    }
+
+    /**
+     * Method that walks a ray from the center of a cell and records the cells it enters until it
+     * leaves the view range
+     *
+     * @param angle angle of the ray
+     * @param cellSize size of the cells
+     * @param cellCount number of cells recorded so far
+     * @return number of cells recorded after the ray
+     */
+    private int traceRay(float angle, float cellSize, int cellCount){
+        float directionX = (float) Math.cos(angle);
+        float directionY = (float) Math.sin(angle);
+        int stepX = directionX > 0f ? 1 : -1;
+        int stepY = directionY > 0f ? 1 : -1;
+        float deltaX = Math.abs(cellSize / directionX);
+        float deltaY = Math.abs(cellSize / directionY);
+        float distanceVertical = deltaX / 2f;
+        float distanceHorizontal = deltaY / 2f;
+
+        int row = 0;
+        int column = 0;
+        float distance = 0f;
+        while(distance <= viewRange){
+            rowOffsets[cellCount] = row;
+            columnOffsets[cellCount] = column;
+            distances[cellCount] = distance;
+            ++cellCount;
+
+            boolean isDistanceVerticalSmaller = distanceVertical < distanceHorizontal;
+            distance = isDistanceVerticalSmaller ? distanceVertical : distanceHorizontal;
+            distanceVertical += isDistanceVerticalSmaller ? deltaX : 0f;
+            distanceHorizontal += isDistanceVerticalSmaller ? 0f : deltaY;
+            column += isDistanceVerticalSmaller ? stepX : 0;
+            row += isDistanceVerticalSmaller ? 0 : stepY;
+        }
+
+        return cellCount;
+    }
+
+    /**
+     * Method that rounds an angle to the closest stored heading
+     *
+     * @param angle angle in radians, any number of turns
+     * @return index of the heading
+     */
+    static int getHeadingIndex(float angle){
+        return Math.round(angle / HEADING_STEP) & (HEADING_COUNT - 1);
+    }
+
+    static int getRayIndex(int heading, int partition, int ray){
+        return (heading * PARTITION_COUNT + partition) * RAYS_PER_PARTITION + ray;
+    }
+
+    int getRayStart(int rayIndex){
+        return rayStarts[rayIndex];
+    }
+
+    int getRayEnd(int rayIndex){
+        return rayStarts[rayIndex + 1];
+    }
+
+    int getRowOffset(int i){
+        return rowOffsets[i];
+    }
+
+    int getColumnOffset(int i){
+        return columnOffsets[i];
+    }
+
+    float getDistance(int i){
+        return distances[i];
+    }
+
+    float getViewRange(){
+        return viewRange;
+    }
+}
@@ -1,12 +1,18 @@
 package com.dujo.antcolonysimulator.colony;
 
 import com.dujo.antcolonysimulator.ant.Ant;
+import com.dujo.antcolonysimulator.ant.AntPopulation;
+import com.dujo.antcolonysimulator.ant.AntRandom;
+import com.dujo.antcolonysimulator.ant.SensingMode;
 import com.dujo.antcolonysimulator.common.Cooldown;
 import com.dujo.antcolonysimulator.world.World;
 
 import java.awt.geom.Point2D;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Colony {
     public static final int ANT_MAX_CAPACITY = 200;
@@ -16,32 +22,60 @@ public class Colony {
     public static final float ANT_CREATE_PERIOD = 2f;
     public static final int ANT_CREATE_COST = 100;
 
+    /**
+     * Number of ants stepped as one unit with their own edit buffer, independent of thread count
+     * so edits are always committed in the same order. Small enough that a full colony is split
+     * between several threads
+     */
+    public static final int PARALLEL_CHUNK_SIZE = 64;
+
     private final int colonyIndex;
     private Point2D.Float position;
-    private final List<Ant> ants;
+    private final AntPopulation population;
+    private final Ant ant;
     private int storedFood;
     private final Cooldown antCreateCooldown;
     private final World world;
+    private final List<WorldEditBuffer> deferredEditBuffers;
+    private ForkJoinPool workerPool;
 
     public Colony(int colonyIndex, Point2D.Float position, World world){
+        this(colonyIndex, position, world, ANT_MAX_CAPACITY);
+    }
+
+    public Colony(int colonyIndex, Point2D.Float position, World world, int antCapacity){
+        this(colonyIndex, position, world, antCapacity, AntRandom.getStreamSeed(0L, colonyIndex));
+    }
+
+    /**
+     * @param colonyIndex index of the colony in the world
+     * @param position position of the colony
+     * @param world world the colony is in
+     * @param antCapacity number of ants the colony starts with and can hold
+     * @param seed seed the random streams of the ants are derived from
+     */
+    public Colony(int colonyIndex, Point2D.Float position, World world, int antCapacity, long seed){
         this.colonyIndex = colonyIndex;
 
         this.position = position;
 
         this.world = world;
 
-        ants = new ArrayList<>();
+        population = new AntPopulation(antCapacity, seed);
+        ant = new Ant(population, world, this);
 
-        float deltaAngle = (float) Math.PI * 2 / ANT_MAX_CAPACITY;
+        float deltaAngle = (float) Math.PI * 2 / antCapacity;
         float directionAngle = 0f;
 
-        for(int i = 0; i < ANT_MAX_CAPACITY; ++i){
+        for(int i = 0; i < antCapacity; ++i){
             directionAngle += deltaAngle;
-            ants.add(new Ant(new Point2D.Float(position.x, position.y), directionAngle, world, this));
+            population.addAnt(position.x, position.y, directionAngle);
         }
 
         antCreateCooldown = new Cooldown(ANT_CREATE_PERIOD);
 
+        deferredEditBuffers = new ArrayList<>();
+
         storedFood = 0;
 
     }
@@ -52,36 +86,185 @@ public class Colony {
      * @param deltaTime time passed since last frame
      */
     public void update(float deltaTime){
+        population.storePreviousPositions();
         antCreateCooldown.update(deltaTime);
 
         if(antCreateCooldown.isReadyAutoReset()){
             createAnt();
         }
 
-        for(Ant ant : ants)
-            ant.update(deltaTime);
+        // Ants see the pheromones the colonies stepped before this one left
+        if(ant.getSensingMode() == SensingMode.SUMMED_AREA)
+            world.updateSummedAreaTables();
+
+        // Ants only read the world while they are stepped, their edits are committed afterwards.
+        // Without a pool the chunks are stepped the same way on this thread, so results don't
+        // depend on the thread count
+        int chunkCount = (population.getSize() + PARALLEL_CHUNK_SIZE - 1) / PARALLEL_CHUNK_SIZE;
+        if(chunkCount == 0)
+            return;
+        while(deferredEditBuffers.size() < chunkCount)
+            deferredEditBuffers.add(new WorldEditBuffer(world, this, population, true));
+
+        if(workerPool == null)
+            for(int i = 0; i < chunkCount; ++i)
+                updateChunk(i, deltaTime);
+        else
+            workerPool.invoke(new UpdateAntsTask(0, chunkCount, deltaTime));
+
+        for(int i = 0; i < chunkCount; ++i)
+            deferredEditBuffers.get(i).commit();
     }
 
     private void createAnt(){
-        if(ants.size() < ANT_MAX_CAPACITY && storedFood > ANT_CREATE_COST){
-            ants.add(new Ant(new Point2D.Float(position.x, position.y), 0f, world, this));
+        if(population.getSize() < population.getCapacity() && storedFood > ANT_CREATE_COST){
+            population.addAnt(position.x, position.y, 0f);
             storedFood -= ANT_CREATE_COST;
         }
     }
 
+    /**
+     * Class that steps a range of ant chunks, splitting the range until a single chunk is left
+     */
+    private class UpdateAntsTask extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+
+        private final int startChunk;
+        private final int endChunk;
+        private final float deltaTime;
+
+        UpdateAntsTask(int startChunk, int endChunk, float deltaTime){
+            this.startChunk = startChunk;
+            this.endChunk = endChunk;
+            this.deltaTime = deltaTime;
+        }
+
+        @Override
+        protected void compute() {
+            if(endChunk - startChunk > 1){
+                int middleChunk = (startChunk + endChunk) >>> 1;
+                invokeAll(
+                        new UpdateAntsTask(startChunk, middleChunk, deltaTime),
+                        new UpdateAntsTask(middleChunk, endChunk, deltaTime)
+                );
+                return;
+            }
+
+            updateChunk(startChunk, deltaTime);
+        }
+    }
+
+    private void updateChunk(int chunk, float deltaTime){
+        ant.update(
+                chunk * PARALLEL_CHUNK_SIZE,
+                Math.min(population.getSize(), (chunk + 1) * PARALLEL_CHUNK_SIZE),
+                deltaTime,
+                deferredEditBuffers.get(chunk)
+        );
+    }
+
+    /**
+     * Method that gets the number of bytes writeState writes for the current state of the colony
+     *
+     * @return size of the state in bytes
+     */
+    public int getStateSize(){
+        return 4 * 4 + population.getStateSize();
+    }
+
+    /**
+     * Method that writes the position, stored food, ant creation cooldown and all ants of the
+     * colony into a buffer
+     *
+     * @param buffer little endian buffer with at least getStateSize bytes remaining
+     */
+    public void writeState(ByteBuffer buffer){
+        buffer.putFloat(position.x);
+        buffer.putFloat(position.y);
+        buffer.putInt(storedFood);
+        buffer.putFloat(antCreateCooldown.getCurrentValue());
+        population.writeState(buffer);
+    }
+
+    /**
+     * Method that replaces the state of the colony with one written by writeState, the colony
+     * needs at least the capacity of the written one
+     *
+     * @param buffer little endian buffer positioned at the state
+     */
+    public void readState(ByteBuffer buffer){
+        position = new Point2D.Float(buffer.getFloat(), buffer.getFloat());
+        storedFood = buffer.getInt();
+        antCreateCooldown.setCurrentValue(buffer.getFloat());
+        population.readState(buffer);
+    }
+
     public void addFood(int amount){
         storedFood += amount;
     }
 
+    public int getStoredFood() {
+        return storedFood;
+    }
+
     public Point2D.Float getPosition() {
         return position;
     }
 
-    public List<Ant> getAnts(){
-        return ants;
+    public AntPopulation getPopulation(){
+        return population;
     }
 
     public int getColonyIndex(){
         return colonyIndex;
     }
+
+    /**
+     * Method that sets the pool used to step ants in parallel, null steps the same chunks one
+     * after another on the calling thread
+     *
+     * @param workerPool pool to step ants on
+     */
+    public void setWorkerPool(ForkJoinPool workerPool){
+        this.workerPool = workerPool;
+    }
+
+    public SensingMode getSensingMode(){
+        return ant.getSensingMode();
+    }
+
+    public void setSensingMode(SensingMode sensingMode){
+        ant.setSensingMode(sensingMode);
+    }
+
+    public boolean isSensingMemoEnabled(){
+        return ant.isSensingMemoEnabled();
+    }
+
+    public void setSensingMemoEnabled(boolean isSensingMemoEnabled){
+        ant.setSensingMemoEnabled(isSensingMemoEnabled);
+    }
+
+    /**
+     * @return number of times ants looked for sensing to reuse, only stencil sensing is shared
+     */
+    public long getSensingMemoLookupCount(){
+        return ant.getSensingMemoLookupCount();
+    }
+
+    /**
+     * @return share of the sensing of ants reused from another ant, 0 before any reuse was tried
+     */
+    public float getSensingMemoHitRate(){
+        long lookupCount = ant.getSensingMemoLookupCount();
+        return lookupCount == 0L ? 0f : (float) ant.getSensingMemoHitCount() / lookupCount;
+    }
+
+    public boolean isFixedPointHeading(){
+        return population.isFixedPointHeading();
+    }
+
+    public void setFixedPointHeading(boolean isFixedPointHeading){
+        population.setFixedPointHeading(isFixedPointHeading);
+    }
 }
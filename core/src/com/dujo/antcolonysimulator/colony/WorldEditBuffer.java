@@ -0,0 +1,154 @@
+package com.dujo.antcolonysimulator.colony;
+
+import com.dujo.antcolonysimulator.ant.AntPheromone;
+import com.dujo.antcolonysimulator.ant.AntPopulation;
+import com.dujo.antcolonysimulator.world.World;
+
+import java.util.Arrays;
+
+/**
+ * Class through which ants change the world and their colony. A direct buffer applies every
+ * edit immediately, a deferred buffer records edits so they can be committed later in the
+ * order they were made, which lets ants be stepped on several threads
+ */
+public class WorldEditBuffer {
+    private static final int SET_PHEROMONE = 0;
+    private static final int DEGRADE_PHEROMONE = 1;
+    private static final int TAKE_FOOD = 2;
+    private static final int ADD_FOOD = 3;
+    private static final AntPheromone[] PHEROMONES = AntPheromone.values();
+
+    private final World world;
+    private final Colony colony;
+    private final boolean isDeferred;
+
+    private int editCount;
+    private int[] editTypes;
+    private int[] cellIndices;
+    private int[] arguments;
+    private float[] values;
+    private int[] antIndices;
+    private final AntPopulation population;
+
+    public WorldEditBuffer(World world, Colony colony, AntPopulation population, boolean isDeferred){
+        this.world = world;
+        this.colony = colony;
+        this.population = population;
+        this.isDeferred = isDeferred;
+
+        editTypes = new int[64];
+        cellIndices = new int[64];
+        arguments = new int[64];
+        values = new float[64];
+        antIndices = new int[64];
+    }
+
+    public void setPheromone(int cellIndex, AntPheromone pheromone, float intensity, int colonyID){
+        if(!isDeferred){
+            world.setPheromoneOnCell(cellIndex, pheromone, intensity, colonyID);
+            return;
+        }
+
+        int editIndex = addEdit(SET_PHEROMONE, cellIndex);
+        arguments[editIndex] = colonyID * World.PHEROMONE_COUNT + pheromone.ordinal();
+        values[editIndex] = intensity;
+    }
+
+    public void degradePheromone(int cellIndex, float ratio){
+        if(!isDeferred){
+            world.degradeAllPheromonesOnCell(cellIndex, ratio);
+            return;
+        }
+
+        int editIndex = addEdit(DEGRADE_PHEROMONE, cellIndex);
+        values[editIndex] = ratio;
+    }
+
+    /**
+     * Method that takes food from the world for an ant of the colony, when deferred the returned amount is
+     * only a prediction based on the current state and the ant is corrected on commit, an ant that
+     * gets nothing goes back to looking for food
+     *
+     * @param antIndex index of the ant that takes the food
+     * @param cellIndex index of the cell from which to take food
+     * @param amount max amount of food to take
+     * @return amount of food taken
+     */
+    public int takeFood(int antIndex, int cellIndex, int amount){
+        if(!isDeferred){
+            return world.takeFoodOnCell(cellIndex, amount);
+        }
+
+        int editIndex = addEdit(TAKE_FOOD, cellIndex);
+        arguments[editIndex] = amount;
+        values[editIndex] = population.getPheromoneIntensity(antIndex);
+        antIndices[editIndex] = antIndex;
+
+        return Math.min(amount, world.getFoodOnCell(cellIndex));
+    }
+
+    public void addFood(int amount){
+        if(!isDeferred){
+            colony.addFood(amount);
+            return;
+        }
+
+        int editIndex = addEdit(ADD_FOOD, 0);
+        arguments[editIndex] = amount;
+    }
+
+    /**
+     * Method that applies all recorded edits in the order they were made and clears the buffer
+     */
+    public void commit(){
+        for(int i = 0; i < editCount; ++i){
+            int cellIndex = cellIndices[i];
+
+            switch (editTypes[i]){
+                case SET_PHEROMONE:
+                    world.setPheromoneOnCell(
+                            cellIndex,
+                            PHEROMONES[arguments[i] % World.PHEROMONE_COUNT],
+                            values[i],
+                            arguments[i] / World.PHEROMONE_COUNT
+                    );
+                    break;
+                case DEGRADE_PHEROMONE:
+                    world.degradeAllPheromonesOnCell(cellIndex, values[i]);
+                    break;
+                case TAKE_FOOD:
+                    int takenAmount = world.takeFoodOnCell(cellIndex, arguments[i]);
+                    population.setFoodHoldingAmount(antIndices[i], takenAmount);
+                    // Ants stepped earlier in the tick can leave nothing of the predicted amount
+                    if(takenAmount == 0)
+                        population.cancelFoodPickup(antIndices[i], values[i]);
+                    break;
+                case ADD_FOOD:
+                    colony.addFood(arguments[i]);
+                    break;
+            }
+        }
+
+        editCount = 0;
+    }
+
+    public boolean isDeferred(){
+        return isDeferred;
+    }
+
+    private int addEdit(int editType, int cellIndex){
+        if(editCount == editTypes.length){
+            int newLength = editCount * 2;
+            editTypes = Arrays.copyOf(editTypes, newLength);
+            cellIndices = Arrays.copyOf(cellIndices, newLength);
+            arguments = Arrays.copyOf(arguments, newLength);
+            values = Arrays.copyOf(values, newLength);
+            antIndices = Arrays.copyOf(antIndices, newLength);
+        }
+
+        editTypes[editCount] = editType;
+        cellIndices[editCount] = cellIndex;
+        return editCount++;
+    }
+
+}
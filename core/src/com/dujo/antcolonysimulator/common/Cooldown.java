@@ -40,4 +40,12 @@ public class Cooldown {
         currentValue -= time;
     }
 
+    public float getCurrentValue() {
+        return currentValue;
+    }
+
+    public void setCurrentValue(float currentValue) {
+        this.currentValue = currentValue;
+    }
+
 }
@@ -3,10 +3,12 @@ package com.dujo.antcolonysimulator.renderer;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
-import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
 import com.dujo.AntColonySimulation.TEXTURE_INDICES;
 import com.dujo.antcolonysimulator.ant.Ant;
+import com.dujo.antcolonysimulator.ant.AntPopulation;
 import com.dujo.antcolonysimulator.colony.Colony;
+import com.dujo.antcolonysimulator.simulation.AntSpatialIndex;
 
 public class ColonyRenderer {
     private final Colony colony;
@@ -31,38 +33,58 @@ public class ColonyRenderer {
         spriteBatch.setColor(1f, 1f, 1f, 1f);
     }
 
-    void renderAnts(SpriteBatch spriteBatch, TextureRegion[] textureRegions){
+    /**
+     * Method that renders the ants of the colony among a set of visible ants
+     *
+     * @param spriteBatch sprite batch to draw with
+     * @param textureRegions regions of the sprite sheet
+     * @param visibleAnts entries of AntSpatialIndex of the ants in view
+     * @param alpha how far the simulation is between its last two steps
+     */
+    void renderAnts(SpriteBatch spriteBatch, TextureRegion[] textureRegions, IntArray visibleAnts, float alpha){
         spriteBatch.setColor(colonyColor);
 
-        for(Ant ant : colony.getAnts()) {
+        AntPopulation population = colony.getPopulation();
+        for(int j = 0; j < visibleAnts.size; ++j){
+            int entry = visibleAnts.items[j];
+            if(AntSpatialIndex.getColonyIndex(entry) == colony.getColonyIndex())
+                renderAnt(spriteBatch, textureRegions, population, AntSpatialIndex.getAntIndex(entry), alpha);
+        }
+
+    }
+
+    private void renderAnt(SpriteBatch spriteBatch, TextureRegion[] textureRegions, AntPopulation population,
+                           int i, float alpha){
+        float x = population.getInterpolatedX(i, alpha);
+        float y = population.getInterpolatedY(i, alpha);
+
+        spriteBatch.draw(
+                textureRegions[TEXTURE_INDICES.ANT_TEXTURE_INDEX.ordinal()],
+                x - Ant.ANT_SIZE / 2f,
+                y - Ant.ANT_SIZE / 2f,
+                Ant.ANT_SIZE / 2f,
+                Ant.ANT_SIZE / 2f,
+                Ant.ANT_SIZE,
+                Ant.ANT_SIZE,
+                1f,
+                1f,
+                (float) Math.toDegrees(population.getCurrentAngle(i))
+        );
+
+        if(population.isHoldingFood(i)){
+            float directionOffsetX = population.getCurrentVectorX(i) * 3.0f * Ant.ANT_SIZE / 4.0f;
+            float directionOffsetY = population.getCurrentVectorY(i) * 3.0f * Ant.ANT_SIZE / 4.0f;
+
+            spriteBatch.setColor(1f,1f,1f,1f);
             spriteBatch.draw(
-                    textureRegions[TEXTURE_INDICES.ANT_TEXTURE_INDEX.ordinal()],
-                    ant.getPosition().x - Ant.ANT_SIZE / 2f,
-                    ant.getPosition().y  - Ant.ANT_SIZE / 2f,
-                    Ant.ANT_SIZE / 2f,
-                    Ant.ANT_SIZE / 2f,
-                    Ant.ANT_SIZE,
+                    textureRegions[TEXTURE_INDICES.HOLDING_FOOD_TEXTURE_INDEX.ordinal()],
+                    x - Ant.ANT_SIZE / 2.0f + directionOffsetX,
+                    y - Ant.ANT_SIZE / 2.0f + directionOffsetY,
                     Ant.ANT_SIZE,
-                    1f,
-                    1f,
-                    (float) Math.toDegrees(ant.getMoveDirection().getCurrentAngle())
+                    Ant.ANT_SIZE
             );
-
-            if(ant.isHoldingFood()){
-                Vector2 directionOffset = ant.getMoveDirection().getCurrentVector().cpy().scl(3.0f * Ant.ANT_SIZE / 4.0f);
-
-                spriteBatch.setColor(1f,1f,1f,1f);
-                spriteBatch.draw(
-                        textureRegions[TEXTURE_INDICES.HOLDING_FOOD_TEXTURE_INDEX.ordinal()],
-                        ant.getPosition().x - Ant.ANT_SIZE / 2.0f + directionOffset.x,
-                        ant.getPosition().y - Ant.ANT_SIZE / 2.0f + directionOffset.y,
-                        Ant.ANT_SIZE,
-                        Ant.ANT_SIZE
-                );
-                spriteBatch.setColor(colonyColor);
-            }
+            spriteBatch.setColor(colonyColor);
         }
-
     }
 
 }
@@ -3,7 +3,11 @@ package com.dujo.antcolonysimulator.renderer;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.IntArray;
+import com.dujo.antcolonysimulator.ant.Ant;
 import com.dujo.antcolonysimulator.colony.Colony;
+import com.dujo.antcolonysimulator.simulation.AntSpatialIndex;
 import com.dujo.antcolonysimulator.world.World;
 
 import java.util.Arrays;
@@ -17,36 +21,60 @@ public class MyRenderer {
     };
 
     private final ColonyRenderer[] colonyRenderers;
+    private final World world;
     private final WorldRenderer worldRenderer;
     private final boolean[] renderColonies;
+    private final IntArray visibleAnts;
     private boolean renderAnts;
     private boolean renderToColonyPheromones;
     private boolean renderToFoodPheromones;
 
     public MyRenderer(World world){
+        this.world = world;
         colonyRenderers = new ColonyRenderer[World.MAX_COLONY_COUNT];
         worldRenderer = new WorldRenderer(world);
 
         renderColonies = new boolean[World.MAX_COLONY_COUNT];
         Arrays.fill(renderColonies, true);
+        visibleAnts = new IntArray();
         renderAnts = true;
         renderToColonyPheromones = true;
         renderToFoodPheromones = true;
     }
 
-    public void render(SpriteBatch spriteBatch, TextureRegion[] textureRegions){
+    /**
+     * Method that renders the world and the colonies
+     *
+     * @param spriteBatch sprite batch to draw with
+     * @param textureRegions regions of the sprite sheet
+     * @param visibleArea part of the world in view of the camera, nothing outside is visited
+     * @param alpha how far the simulation is between its last two steps, used to interpolate ants
+     * @param antIndex spatial index of the ants, up to date with the last step
+     */
+    public void render(SpriteBatch spriteBatch, TextureRegion[] textureRegions, Rectangle visibleArea, float alpha,
+                       AntSpatialIndex antIndex){
         worldRenderer.render(
-                spriteBatch, textureRegions,
+                spriteBatch, textureRegions, visibleArea,
                 renderColonies,
                 renderToColonyPheromones, renderToFoodPheromones
         );
 
+        // Ants move less than a cell between steps, the margin covers interpolation and sprite size
+        if(renderAnts)
+            antIndex.queryRectangle(
+                    visibleArea.x - Ant.ANT_SIZE * 2f,
+                    visibleArea.y - Ant.ANT_SIZE * 2f,
+                    visibleArea.x + visibleArea.width + Ant.ANT_SIZE * 2f,
+                    visibleArea.y + visibleArea.height + Ant.ANT_SIZE * 2f,
+                    visibleAnts
+            );
+
         for(int i = 0; i < colonyRenderers.length; ++i){
             if(colonyRenderers[i] != null && renderColonies[i]) {
                 colonyRenderers[i].render(spriteBatch, textureRegions);
 
                 if (renderAnts)
-                    colonyRenderers[i].renderAnts(spriteBatch, textureRegions);
+                    colonyRenderers[i].renderAnts(spriteBatch, textureRegions, visibleAnts, alpha);
             }
         }
 
@@ -74,4 +102,8 @@ public class MyRenderer {
         }
     }
 
+    public void dispose(){
+        worldRenderer.dispose();
+    }
+
 }
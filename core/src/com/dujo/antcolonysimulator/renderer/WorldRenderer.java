@@ -1,97 +1,300 @@
 package com.dujo.antcolonysimulator.renderer;
 
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Rectangle;
 import com.dujo.antcolonysimulator.ant.AntPheromone;
 import com.dujo.antcolonysimulator.world.World;
-import com.dujo.antcolonysimulator.world.WorldCell;
 import com.dujo.AntColonySimulation.TEXTURE_INDICES;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Class that renders the world as one texture per layer, every texel is a cell. Only the visible
+ * tiles that changed since they were last rendered are rewritten and uploaded
+ */
 public class WorldRenderer {
+    private static final int WALL_LAYER = 0;
+    private static final int FOOD_LAYER = 1;
+    private static final int TO_COLONY_PHEROMONE_LAYER = 2;
+    private static final int TO_FOOD_PHEROMONE_LAYER = 3;
+    private static final int REPELLENT_PHEROMONE_LAYER = 4;
+    private static final int LAYER_COUNT = 5;
+    private static final TEXTURE_INDICES[] LAYER_TEXTURE_INDICES = {
+            TEXTURE_INDICES.WALL_TEXTURE_INDEX,
+            TEXTURE_INDICES.FOOD_TEXTURE_INDEX,
+            TEXTURE_INDICES.TO_COLONY_PHEROMONE_TEXTURE_INDEX,
+            TEXTURE_INDICES.TO_FOOD_PHEROMONE_TEXTURE_INDEX,
+            TEXTURE_INDICES.REPELLENT_PHEROMONE_TEXTURE_INDEX
+    };
+
     private final World world;
+    private final Pixmap[] layerPixmaps;
+    private final Texture[] layerTextures;
+    // Tile versions the texels were last written for, a tile is rewritten when the world's differs
+    private final int[] renderedTileVersions;
+    private final boolean[] renderedColonies;
+    private final boolean[] uploadRows;
+
+    // Average color of every layer sprite as r, g, b, a bytes, read on the first render
+    private byte[][] layerColors;
 
     WorldRenderer(World world){
         this.world = world;
+
+        layerPixmaps = new Pixmap[LAYER_COUNT];
+        layerTextures = new Texture[LAYER_COUNT];
+        for(int i = 0; i < LAYER_COUNT; ++i){
+            layerPixmaps[i] = new Pixmap(world.getColumnCount(), world.getRowCount(), Pixmap.Format.RGBA8888);
+            layerPixmaps[i].setBlending(Pixmap.Blending.None);
+            layerTextures[i] = new Texture(layerPixmaps[i]);
+        }
+
+        renderedTileVersions = new int[world.getTileColumnCount() * world.getTileRowCount()];
+        renderedColonies = new boolean[World.MAX_COLONY_COUNT];
+        uploadRows = new boolean[world.getRowCount()];
     }
 
-    void render(SpriteBatch spriteBatch, TextureRegion[] textureRegions,
+    void render(SpriteBatch spriteBatch, TextureRegion[] textureRegions, Rectangle visibleArea,
                 boolean[] renderColonies,
                 boolean renderToColonyPheromones, boolean renderToFoodPheromones) {
-        WorldCell[] cells = world.getCells();
-        for (int i = 0; i < world.getColumnCount() * world.getRowCount(); ++i) {
-            spriteBatch.setColor(1f, 1f, 1f, 1f);
-
-            if (cells[i].isWall()) {
-                spriteBatch.draw(
-                        textureRegions[TEXTURE_INDICES.WALL_TEXTURE_INDEX.ordinal()],
-                        cells[i].getColumn() * world.getCellSize(),
-                        cells[i].getRow() * world.getCellSize(),
-                        world.getCellSize(),
-                        world.getCellSize()
-                );
+        if(layerColors == null){
+            layerColors = new byte[LAYER_COUNT][];
+            for(int i = 0; i < LAYER_COUNT; ++i)
+                layerColors[i] = getAverageColor(textureRegions[LAYER_TEXTURE_INDICES[i].ordinal()]);
+
+            invalidateTiles();
+        }
+
+        // Hiding or showing a colony changes the summed pheromones of every cell
+        if(!Arrays.equals(renderColonies, renderedColonies)){
+            System.arraycopy(renderColonies, 0, renderedColonies, 0, renderedColonies.length);
+            invalidateTiles();
+        }
+
+        float cellSize = world.getCellSize();
+        int startRow = Math.max(0, (int) Math.floor(visibleArea.y / cellSize));
+        int endRow = Math.min(world.getRowCount(), (int) Math.ceil((visibleArea.y + visibleArea.height) / cellSize));
+        int startColumn = Math.max(0, (int) Math.floor(visibleArea.x / cellSize));
+        int endColumn = Math.min(world.getColumnCount(), (int) Math.ceil((visibleArea.x + visibleArea.width) / cellSize));
+        if(startRow >= endRow || startColumn >= endColumn)
+            return;
+
+        int startTileRow = startRow / World.TILE_SIZE;
+        int endTileRow = (endRow - 1) / World.TILE_SIZE + 1;
+        int startTileColumn = startColumn / World.TILE_SIZE;
+        int endTileColumn = (endColumn - 1) / World.TILE_SIZE + 1;
+
+        // Tiles out of view keep their old version, so their changes are picked up once they are visible
+        for(int tileRow = startTileRow; tileRow < endTileRow; ++tileRow){
+            for(int tileColumn = startTileColumn; tileColumn < endTileColumn; ++tileColumn){
+                int tileIndex = world.getTileIndex(tileRow, tileColumn);
+                int tileVersion = world.getTileVersion(tileIndex);
+                if(tileVersion == renderedTileVersions[tileIndex])
+                    continue;
+
+                int tileStartRow = tileRow * World.TILE_SIZE;
+                int tileEndRow = Math.min(world.getRowCount(), tileStartRow + World.TILE_SIZE);
+                int tileStartColumn = tileColumn * World.TILE_SIZE;
+                int tileEndColumn = Math.min(world.getColumnCount(), tileStartColumn + World.TILE_SIZE);
+
+                for(int row = tileStartRow; row < tileEndRow; ++row) {
+                    writeRow(row, tileStartColumn, tileEndColumn);
+                    uploadRows[row] = true;
+                }
+                renderedTileVersions[tileIndex] = tileVersion;
+            }
+        }
+
+        spriteBatch.flush();
+        uploadRows(startTileRow * World.TILE_SIZE, Math.min(world.getRowCount(), endTileRow * World.TILE_SIZE));
+
+        float u = startColumn / (float) world.getColumnCount();
+        float u2 = endColumn / (float) world.getColumnCount();
+        float v = startRow / (float) world.getRowCount();
+        float v2 = endRow / (float) world.getRowCount();
+
+        spriteBatch.setColor(1f, 1f, 1f, 1f);
+        for(int i = 0; i < LAYER_COUNT; ++i){
+            if(i == TO_COLONY_PHEROMONE_LAYER && !renderToColonyPheromones)
                 continue;
+            if(i == TO_FOOD_PHEROMONE_LAYER && !renderToFoodPheromones)
+                continue;
+
+            // Pixmap row 0 is world row 0, so the texture is drawn flipped vertically
+            spriteBatch.draw(
+                    layerTextures[i],
+                    startColumn * cellSize,
+                    startRow * cellSize,
+                    (endColumn - startColumn) * cellSize,
+                    (endRow - startRow) * cellSize,
+                    u, v, u2, v2
+            );
+        }
+    }
+
+    /**
+     * Method that makes every tile differ from the version it was rendered for
+     */
+    private void invalidateTiles(){
+        for(int i = 0; i < renderedTileVersions.length; ++i)
+            renderedTileVersions[i] = world.getTileVersion(i) - 1;
+    }
+
+    /**
+     * Method that writes the texels of a part of a row of cells into every layer pixmap
+     *
+     * @param row row of cells
+     * @param startColumn first column to write
+     * @param endColumn column after the last one to write
+     */
+    private void writeRow(int row, int startColumn, int endColumn){
+        int offset = (row * world.getColumnCount() + startColumn) * 4;
+
+        for (int column = startColumn; column < endColumn; ++column, offset += 4) {
+            int i = world.getCellIndex(row, column);
+
+            // Cells with a wall or food show nothing else
+            float wallAlpha = 0f;
+            float foodAlpha = 0f;
+            float toColonyAlpha = 0f;
+            float toFoodAlpha = 0f;
+            float repellentAlpha = 0f;
+
+            if (world.isWall(i)) {
+                wallAlpha = 1f;
+            } else if (world.isFoodOnCell(i)) {
+                foodAlpha = world.getFoodOnCell(i) / World.MAX_FOOD_ON_CELL;
+            } else {
+                toColonyAlpha = getPheromoneSum(i, AntPheromone.TO_COLONY) / World.MAX_PHEROMONE_INTENSITY;
+                toFoodAlpha = getPheromoneSum(i, AntPheromone.TO_FOOD) / World.MAX_PHEROMONE_INTENSITY;
+                repellentAlpha = getPheromoneSum(i, AntPheromone.REPELLENT) / World.MAX_REPELLENT_INTENSITY;
             }
 
-            if (cells[i].isFoodOnCell()) {
-                spriteBatch.setColor(1f, 1f, 1f, cells[i].getFoodOnCell() / World.MAX_FOOD_ON_CELL);
-                spriteBatch.draw(
-                        textureRegions[TEXTURE_INDICES.FOOD_TEXTURE_INDEX.ordinal()],
-                        cells[i].getColumn() * world.getCellSize(),
-                        cells[i].getRow() * world.getCellSize(),
-                        world.getCellSize(),
-                        world.getCellSize()
-                );
+            writeTexel(WALL_LAYER, offset, wallAlpha);
+            writeTexel(FOOD_LAYER, offset, foodAlpha);
+            writeTexel(TO_COLONY_PHEROMONE_LAYER, offset, toColonyAlpha);
+            writeTexel(TO_FOOD_PHEROMONE_LAYER, offset, toFoodAlpha);
+            writeTexel(REPELLENT_PHEROMONE_LAYER, offset, repellentAlpha);
+        }
+    }
+
+    /**
+     * Method that gets the total intensity of a pheromone on a cell from all visible colonies
+     */
+    private float getPheromoneSum(int cellIndex, AntPheromone pheromone){
+        float intensity = 0f;
+        for (int j = 0; j < World.MAX_COLONY_COUNT; ++j)
+            if (renderedColonies[j])
+                intensity += world.getPheromoneOnCell(cellIndex, pheromone, j);
+
+        return intensity;
+    }
+
+    private void writeTexel(int layer, int offset, float alpha){
+        ByteBuffer pixels = layerPixmaps[layer].getPixels();
+        byte[] color = layerColors[layer];
+        alpha = Math.min(Math.max(alpha, 0f), 1f);
+
+        pixels.put(offset, color[0]);
+        pixels.put(offset + 1, color[1]);
+        pixels.put(offset + 2, color[2]);
+        pixels.put(offset + 3, (byte) ((color[3] & 0xFF) * alpha));
+    }
+
+    /**
+     * Method that uploads every run of consecutive rewritten rows in a range to the layer textures,
+     * whole rows are uploaded because GL20 can't upload part of a pixmap row
+     *
+     * @param firstRow first row of the range
+     * @param lastRow row after the last one of the range
+     */
+    private void uploadRows(int firstRow, int lastRow){
+        int rowSize = world.getColumnCount() * 4;
+
+        int startRow = firstRow;
+        while(startRow < lastRow){
+            if(!uploadRows[startRow]){
+                ++startRow;
                 continue;
             }
 
-            if (renderToColonyPheromones) {
-                // Get the total intensity of this pheromone (from all colonies)
-                float intensity = 0f;
-                for (int j = 0; j < World.MAX_COLONY_COUNT; ++j)
-                    if (renderColonies[j])
-                        intensity += cells[i].getPheromoneOnCell(AntPheromone.TO_COLONY, j);
-
-                spriteBatch.setColor(1f, 1f, 1f, intensity / World.MAX_PHEROMONE_INTENSITY);
-                spriteBatch.draw(
-                        textureRegions[TEXTURE_INDICES.TO_COLONY_PHEROMONE_TEXTURE_INDEX.ordinal()],
-                        cells[i].getColumn() * world.getCellSize(),
-                        cells[i].getRow() * world.getCellSize(),
-                        world.getCellSize(),
-                        world.getCellSize()
+            int endRow = startRow;
+            while(endRow < lastRow && uploadRows[endRow])
+                uploadRows[endRow++] = false;
+
+            for(int i = 0; i < LAYER_COUNT; ++i){
+                ByteBuffer pixels = layerPixmaps[i].getPixels();
+                pixels.position(startRow * rowSize);
+
+                Gdx.gl.glBindTexture(GL20.GL_TEXTURE_2D, layerTextures[i].getTextureObjectHandle());
+                Gdx.gl.glTexSubImage2D(
+                        GL20.GL_TEXTURE_2D, 0,
+                        0, startRow, world.getColumnCount(), endRow - startRow,
+                        GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE,
+                        pixels
                 );
+
+                pixels.position(0);
             }
 
-            if (renderToFoodPheromones) {
-                // Get the total intensity of this pheromone (from all colonies)
-                float intensity = 0f;
-                for (int j = 0; j < World.MAX_COLONY_COUNT; ++j)
-                    if (renderColonies[j])
-                        intensity += cells[i].getPheromoneOnCell(AntPheromone.TO_FOOD, j);
-
-                spriteBatch.setColor(1f, 1f, 1f, intensity / World.MAX_PHEROMONE_INTENSITY);
-                spriteBatch.draw(
-                        textureRegions[TEXTURE_INDICES.TO_FOOD_PHEROMONE_TEXTURE_INDEX.ordinal()],
-                        cells[i].getColumn() * world.getCellSize(),
-                        cells[i].getRow() * world.getCellSize(),
-                        world.getCellSize(),
-                        world.getCellSize()
-                );
+            startRow = endRow;
+        }
+    }
+
+    /**
+     * Method that reads the average color of a sprite, weighted by the alpha of its pixels
+     *
+     * @param textureRegion region of the sprite
+     * @return r, g, b and a bytes
+     */
+    private static byte[] getAverageColor(TextureRegion textureRegion){
+        TextureData textureData = textureRegion.getTexture().getTextureData();
+        if(!textureData.isPrepared())
+            textureData.prepare();
+        Pixmap pixmap = textureData.consumePixmap();
+
+        float red = 0f;
+        float green = 0f;
+        float blue = 0f;
+        float alpha = 0f;
+        for(int y = 0; y < textureRegion.getRegionHeight(); ++y){
+            for(int x = 0; x < textureRegion.getRegionWidth(); ++x){
+                int rgba = pixmap.getPixel(textureRegion.getRegionX() + x, textureRegion.getRegionY() + y);
+                float pixelAlpha = (rgba & 0xFF) / 255f;
+
+                red += (rgba >>> 24) * pixelAlpha;
+                green += (rgba >>> 16 & 0xFF) * pixelAlpha;
+                blue += (rgba >>> 8 & 0xFF) * pixelAlpha;
+                alpha += pixelAlpha;
             }
+        }
 
-            // Always draw repellent pheromones because they don't obscure anything
-            float intensity = 0f;
-            for (int j = 0; j < World.MAX_COLONY_COUNT; ++j)
-                if (renderColonies[j])
-                    intensity += cells[i].getPheromoneOnCell(AntPheromone.REPELLENT, j);
+        if(textureData.disposePixmap())
+            pixmap.dispose();
 
-            spriteBatch.setColor(1f, 1f, 1f, intensity / World.MAX_REPELLENT_INTENSITY);
-            spriteBatch.draw(
-                    textureRegions[TEXTURE_INDICES.REPELLENT_PHEROMONE_TEXTURE_INDEX.ordinal()],
-                    cells[i].getColumn() * world.getCellSize(),
-                    cells[i].getRow() * world.getCellSize(),
-                    world.getCellSize(),
-                    world.getCellSize()
-            );
+        int pixelCount = textureRegion.getRegionWidth() * textureRegion.getRegionHeight();
+        if(alpha == 0f)
+            return new byte[4];
+
+        return new byte[]{
+                (byte) (red / alpha),
+                (byte) (green / alpha),
+                (byte) (blue / alpha),
+                (byte) (alpha / pixelCount * 255f)
+        };
+    }
+
+    void dispose(){
+        for(int i = 0; i < LAYER_COUNT; ++i){
+            layerTextures[i].dispose();
+            layerPixmaps[i].dispose();
         }
     }
 
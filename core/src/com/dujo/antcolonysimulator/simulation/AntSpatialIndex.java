@@ -0,0 +1,147 @@
+package com.dujo.antcolonysimulator.simulation;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.dujo.antcolonysimulator.ant.AntPopulation;
+import com.dujo.antcolonysimulator.colony.Colony;
+import com.dujo.antcolonysimulator.world.World;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class that sorts the ants of all colonies into a grid of buckets, one bucket per world tile,
+ * so ants inside a rectangle are found by visiting only the buckets it overlaps.
+ * The grid is rebuilt from scratch with a counting sort, which takes linear time in the number
+ * of ants. Ants are reported as entries that pack the colony index and the ant index
+ */
+public class AntSpatialIndex {
+    private static final int ENTRY_ANT_BITS = 28;
+    private static final int ENTRY_ANT_MASK = (1 << ENTRY_ANT_BITS) - 1;
+
+    private final float bucketSize;
+    private final int bucketColumnCount;
+    private final int bucketRowCount;
+
+    // Entries sorted by bucket, row by row, entries of bucket b are at bucketStarts[b] to bucketStarts[b + 1]
+    private final int[] bucketStarts;
+    private int[] entries;
+    // Positions of the sorted entries, so queries don't have to visit the populations
+    private float[] entryX;
+    private float[] entryY;
+    private int entryCount;
+    // Bucket of every ant during a rebuild, in colony order
+    private int[] antBuckets;
+
+    public AntSpatialIndex(World world){
+        bucketSize = World.TILE_SIZE * world.getCellSize();
+        bucketColumnCount = world.getTileColumnCount();
+        bucketRowCount = world.getTileRowCount();
+
+        bucketStarts = new int[bucketColumnCount * bucketRowCount + 1];
+        entries = new int[0];
+        entryX = new float[0];
+        entryY = new float[0];
+        antBuckets = new int[0];
+    }
+
+    /**
+     * Method that sorts the current positions of all ants into the grid
+     *
+     * @param colonies colonies whose ants are indexed
+     */
+    public void rebuild(List<Colony> colonies){
+        int antCount = 0;
+        for(Colony colony : colonies)
+            antCount += colony.getPopulation().getSize();
+
+        if(entries.length < antCount){
+            int capacity = Math.max(antCount, entries.length * 2);
+            entries = new int[capacity];
+            entryX = new float[capacity];
+            entryY = new float[capacity];
+            antBuckets = new int[capacity];
+        }
+        entryCount = antCount;
+
+        Arrays.fill(bucketStarts, 0);
+        int k = 0;
+        for(Colony colony : colonies){
+            AntPopulation population = colony.getPopulation();
+            for(int i = 0; i < population.getSize(); ++i){
+                int bucket = getBucket(population.getX(i), population.getY(i));
+                antBuckets[k++] = bucket;
+                ++bucketStarts[bucket];
+            }
+        }
+
+        for(int b = 1; b < bucketStarts.length; ++b)
+            bucketStarts[b] += bucketStarts[b - 1];
+
+        // Every element now holds the end of its bucket, filling the buckets from their end moves
+        // it to the start and keeps ants of a bucket in colony and index order
+        for(int c = colonies.size() - 1; c >= 0; --c){
+            Colony colony = colonies.get(c);
+            AntPopulation population = colony.getPopulation();
+            for(int i = population.getSize() - 1; i >= 0; --i){
+                int j = --bucketStarts[antBuckets[--k]];
+                entries[j] = colony.getColonyIndex() << ENTRY_ANT_BITS | i;
+                entryX[j] = population.getX(i);
+                entryY[j] = population.getY(i);
+            }
+        }
+    }
+
+    /**
+     * Method that finds the ants inside a rectangle
+     *
+     * @param startX smallest x coordinate of the rectangle
+     * @param startY smallest y coordinate of the rectangle
+     * @param endX largest x coordinate of the rectangle
+     * @param endY largest y coordinate of the rectangle
+     * @param result array the entries of the found ants are written into, cleared first
+     */
+    public void queryRectangle(float startX, float startY, float endX, float endY, IntArray result){
+        result.clear();
+
+        int startBucketColumn = getBucketColumn(startX);
+        int endBucketColumn = getBucketColumn(endX);
+        int startBucketRow = getBucketRow(startY);
+        int endBucketRow = getBucketRow(endY);
+
+        // A range of buckets in a row is a single range of entries
+        for(int bucketRow = startBucketRow; bucketRow <= endBucketRow; ++bucketRow){
+            int rowStart = bucketRow * bucketColumnCount;
+            for(int j = bucketStarts[rowStart + startBucketColumn]; j < bucketStarts[rowStart + endBucketColumn + 1]; ++j)
+                if(entryX[j] >= startX && entryX[j] <= endX && entryY[j] >= startY && entryY[j] <= endY)
+                    result.add(entries[j]);
+        }
+    }
+
+    public static int getColonyIndex(int entry){
+        return entry >>> ENTRY_ANT_BITS;
+    }
+
+    public static int getAntIndex(int entry){
+        return entry & ENTRY_ANT_MASK;
+    }
+
+    /**
+     * @return number of ants in the index
+     */
+    public int getSize(){
+        return entryCount;
+    }
+
+    private int getBucket(float x, float y){
+        return getBucketRow(y) * bucketColumnCount + getBucketColumn(x);
+    }
+
+    // Ants outside of the world are kept in the buckets on its edge
+    private int getBucketColumn(float x){
+        return Math.min(Math.max((int) (x / bucketSize), 0), bucketColumnCount - 1);
+    }
+
+    private int getBucketRow(float y){
+        return Math.min(Math.max((int) (y / bucketSize), 0), bucketRowCount - 1);
+    }
+}
@@ -0,0 +1,166 @@
+package com.dujo.antcolonysimulator.simulation;
+
+import com.dujo.antcolonysimulator.ant.SensingMode;
+import com.dujo.antcolonysimulator.colony.Colony;
+import com.dujo.antcolonysimulator.world.VisibilityCache;
+import com.dujo.antcolonysimulator.world.World;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Command line entry point that runs the simulation without rendering as fast as possible
+ * and reports the tick rate
+ *
+ * Usage: HeadlessSimulation map [--ticks n] [--threads n] [--ants n] [--colony x,y]... [--world-file path]
+ *                            [--snapshot path] [--seed n] [--sensing sampled|stencil|summed_area] [--fixed-point-heading] [--visibility-cache] [--sensing-memo]
+ *
+ * A snapshot file (.acss) given as the map continues the saved simulation with its saved sensing
+ * mode and features, --snapshot saves the simulation after the last tick.
+ * With --world-file the cell data lives in a memory mapped world file. If the file exists the
+ * world is reopened from it as it was left by the last run and the map is not read, otherwise
+ * the map image is loaded into a new world file
+ */
+public class HeadlessSimulation {
+    public static void main(String[] args) throws IOException {
+        if(args.length == 0){
+            System.err.println("Usage: HeadlessSimulation map [--ticks n] [--threads n] [--ants n] [--colony x,y]... [--world-file path] [--snapshot path] [--seed n] [--sensing sampled|stencil|summed_area]"
+                    + " [--fixed-point-heading] [--visibility-cache] [--sensing-memo]");
+            System.exit(1);
+        }
+
+        int tickCount = 10000;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        int antCount = Colony.ANT_MAX_CAPACITY;
+        List<Point2D.Float> colonyPositions = new ArrayList<>();
+        Path worldPath = null;
+        Path snapshotPath = null;
+        long seed = new Random().nextLong();
+        // Settings that aren't given keep the defaults of a new simulation or the saved ones of a snapshot
+        SensingMode sensingMode = null;
+        boolean isFixedPointHeading = false;
+        boolean isVisibilityCacheEnabled = false;
+        boolean isSensingMemoEnabled = false;
+
+        for(int i = 1; i < args.length; ++i){
+            switch (args[i]){
+                case "--ticks":
+                    tickCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threadCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--ants":
+                    antCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--colony":
+                    String[] coordinates = args[++i].split(",");
+                    colonyPositions.add(new Point2D.Float(
+                            Float.parseFloat(coordinates[0]),
+                            Float.parseFloat(coordinates[1])
+                    ));
+                    break;
+                case "--world-file":
+                    worldPath = Paths.get(args[++i]);
+                    break;
+                case "--snapshot":
+                    snapshotPath = Paths.get(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--sensing":
+                    sensingMode = SensingMode.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--fixed-point-heading":
+                    isFixedPointHeading = true;
+                    break;
+                case "--visibility-cache":
+                    isVisibilityCacheEnabled = true;
+                    break;
+                case "--sensing-memo":
+                    isSensingMemoEnabled = true;
+                    break;
+                default:
+                    System.err.println("Unknown argument " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        Path mapPath = Paths.get(args[0]);
+        SimulationEngine engine;
+        if(mapPath.getFileName().toString().toLowerCase().endsWith(SimulationSnapshot.FILE_EXTENSION)) {
+            engine = SimulationSnapshot.load(mapPath, threadCount);
+        }else {
+            World world;
+            if(worldPath == null)
+                world = WorldLoader.load(mapPath);
+            else if(Files.exists(worldPath))
+                world = WorldLoader.load(worldPath);
+            else
+                try (InputStream inputStream = Files.newInputStream(mapPath)) {
+                    world = WorldLoader.loadFromImage(inputStream, worldPath);
+                }
+
+            if(colonyPositions.isEmpty())
+                colonyPositions.add(new Point2D.Float(
+                        world.getColumnCount() * world.getCellSize() / 2f,
+                        world.getRowCount() * world.getCellSize() / 2f
+                ));
+
+            engine = new SimulationEngine(world, threadCount, seed);
+            for(Point2D.Float position : colonyPositions)
+                engine.addColony(position, antCount);
+        }
+        if(sensingMode != null)
+            engine.setSensingMode(sensingMode);
+        if(isFixedPointHeading)
+            engine.setFixedPointHeading(true);
+        if(isVisibilityCacheEnabled)
+            engine.setVisibilityCacheEnabled(true);
+        if(isSensingMemoEnabled)
+            engine.setSensingMemoEnabled(true);
+        World world = engine.getWorld();
+
+        long startTime = System.nanoTime();
+        engine.step(tickCount);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.printf("%d ticks in %.3f s, %.1f ticks/s, seed %d%n", tickCount, seconds, tickCount / seconds,
+                engine.getSeed());
+        System.out.printf("%d of %d tiles hold pheromones, %d tiles allocated%n",
+                world.getActiveTileCount(), world.getTileColumnCount() * world.getTileRowCount(),
+                world.getAllocatedTileCount());
+        System.out.printf("%d of %d food sources depleted%n",
+                world.getFoodClusters().getDepletedSourceCount(), world.getFoodClusters().getSourceCount());
+        VisibilityCache visibilityCache = world.getVisibilityCache();
+        if(visibilityCache != null)
+            System.out.printf("Visibility cache hit rate %.1f%%, %.1f raycasts per tick instead of %.1f, %d tiles in %.1f MB%n",
+                    visibilityCache.getHitRate() * 100f, (double) visibilityCache.getRaycastCount() / tickCount,
+                    (double) (visibilityCache.getHitCount() + visibilityCache.getRaycastCount()) / tickCount,
+                    visibilityCache.getAllocatedTileCount(),
+                    visibilityCache.getAllocatedTileCount() * (double) VisibilityCache.TILE_BYTES / (1 << 20));
+        for(Colony colony : engine.getColonies()) {
+            if(colony.isSensingMemoEnabled())
+                System.out.printf("Colony %d: %d ants, %d stored food, %.1f%% of sensing shared%n",
+                        colony.getColonyIndex(), colony.getPopulation().getSize(), colony.getStoredFood(),
+                        colony.getSensingMemoHitRate() * 100f);
+            else
+                System.out.printf("Colony %d: %d ants, %d stored food%n",
+                        colony.getColonyIndex(), colony.getPopulation().getSize(), colony.getStoredFood());
+        }
+
+        if(snapshotPath != null)
+            SimulationSnapshot.save(engine, snapshotPath);
+
+        engine.dispose();
+        world.close();
+    }
+}
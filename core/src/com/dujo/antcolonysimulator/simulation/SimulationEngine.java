@@ -0,0 +1,363 @@
+package com.dujo.antcolonysimulator.simulation;
+
+import com.dujo.antcolonysimulator.ant.Ant;
+import com.dujo.antcolonysimulator.ant.AntRandom;
+import com.dujo.antcolonysimulator.ant.SensingMode;
+import com.dujo.antcolonysimulator.colony.Colony;
+import com.dujo.antcolonysimulator.world.World;
+
+import java.awt.geom.Point2D;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Class that owns the world and the colonies and advances the simulation, it doesn't depend on
+ * a graphics context so it can run headless as well as behind the desktop viewer
+ */
+public class SimulationEngine {
+    public static final float DEFAULT_TIME_STEP = 1f / 60f;
+    public static final float MAX_FRAME_DELTA_TIME = 0.25f;
+    public static final float DEFAULT_MAX_STEP_TIME_PER_FRAME = 0.012f;
+
+    // Optional features saved with the state
+    private static final int STATE_FIXED_POINT_HEADING_FLAG = 1;
+    private static final int STATE_VISIBILITY_CACHE_FLAG = 2;
+    private static final int STATE_SENSING_MEMO_FLAG = 4;
+
+    private final World world;
+    private final long seed;
+    private final List<Colony> colonies;
+    private final ForkJoinPool workerPool;
+    private long tickCount;
+    // Rebuilt on first use after ants moved
+    private final AntSpatialIndex antIndex;
+    private boolean isAntIndexValid;
+    private SensingMode sensingMode;
+    private boolean isFixedPointHeading;
+    private boolean isSensingMemoEnabled;
+
+    // Simulated time that has not been stepped yet, always less than a step after advance
+    private double accumulatedTime;
+    private long maxStepNanosPerFrame;
+    private float effectiveTimeScale;
+
+    /**
+     * Constructor that creates an engine with a random seed
+     *
+     * @param world world to simulate
+     * @param threadCount number of threads to step ants on, 0 steps them on the calling thread
+     */
+    public SimulationEngine(World world, int threadCount){
+        this(world, threadCount, new Random().nextLong());
+    }
+
+    /**
+     * Constructor that creates an engine whose ants draw their random numbers from streams
+     * derived from a seed, runs with the same seed and the same inputs give the same results
+     * for any thread count, including 0
+     *
+     * @param world world to simulate
+     * @param threadCount number of threads to step ants on, 0 steps them on the calling thread
+     * @param seed master seed of the simulation
+     */
+    public SimulationEngine(World world, int threadCount, long seed){
+        this.world = world;
+        this.seed = seed;
+
+        colonies = new ArrayList<>();
+        workerPool = threadCount > 0 ? new ForkJoinPool(threadCount) : null;
+        tickCount = 0;
+        antIndex = new AntSpatialIndex(world);
+        sensingMode = SensingMode.SAMPLED;
+
+        accumulatedTime = 0.0;
+        setMaxStepTimePerFrame(DEFAULT_MAX_STEP_TIME_PER_FRAME);
+        effectiveTimeScale = 1f;
+    }
+
+    public Colony addColony(Point2D.Float position){
+        return addColony(position, Colony.ANT_MAX_CAPACITY);
+    }
+
+    /**
+     * Method that places a new colony in the world
+     *
+     * @param position position of the colony
+     * @param antCapacity number of ants the colony starts with and can hold
+     * @return the new colony, null if the world already holds the max number of colonies
+     */
+    public Colony addColony(Point2D.Float position, int antCapacity){
+        if(colonies.size() >= World.MAX_COLONY_COUNT)
+            return null;
+
+        Colony colony = new Colony(colonies.size(), position, world, antCapacity,
+                AntRandom.getStreamSeed(seed, colonies.size()));
+        colony.setWorkerPool(workerPool);
+        colony.setSensingMode(sensingMode);
+        colony.setFixedPointHeading(isFixedPointHeading);
+        colony.setSensingMemoEnabled(isSensingMemoEnabled);
+        colonies.add(colony);
+        isAntIndexValid = false;
+        return colony;
+    }
+
+    /**
+     * Method that advances the world and all colonies by one tick
+     *
+     * @param deltaTime simulated time of the tick
+     */
+    public void step(float deltaTime){
+        world.update(deltaTime);
+        // Indexed so a step doesn't allocate an iterator
+        for(int i = 0; i < colonies.size(); ++i)
+            colonies.get(i).update(deltaTime);
+
+        ++tickCount;
+        isAntIndexValid = false;
+    }
+
+    /**
+     * Method that advances the simulation by a number of ticks of DEFAULT_TIME_STEP
+     *
+     * @param tickCount number of ticks
+     */
+    public void step(int tickCount){
+        for(int i = 0; i < tickCount; ++i)
+            step(DEFAULT_TIME_STEP);
+    }
+
+    /**
+     * Method that advances the simulation by the scaled time of a rendered frame in steps of
+     * DEFAULT_TIME_STEP, so the results don't depend on the frame rate. When the steps take
+     * longer than the per frame budget the remaining time is dropped and the simulation runs
+     * at a lower effective speed instead of freezing the frame
+     *
+     * @param frameDeltaTime real time passed since the last frame
+     * @param timeScale how many times faster than real time to simulate
+     * @return number of steps taken
+     */
+    public int advance(float frameDeltaTime, float timeScale){
+        float scaledDeltaTime = Math.min(frameDeltaTime, MAX_FRAME_DELTA_TIME) * timeScale;
+        accumulatedTime += scaledDeltaTime;
+
+        long startTime = System.nanoTime();
+        int stepCount = 0;
+        while(accumulatedTime >= DEFAULT_TIME_STEP){
+            step(DEFAULT_TIME_STEP);
+            accumulatedTime -= DEFAULT_TIME_STEP;
+            ++stepCount;
+
+            // Out of budget, drop the backlog instead of letting it grow frame after frame
+            if(System.nanoTime() - startTime > maxStepNanosPerFrame){
+                accumulatedTime = 0.0;
+                break;
+            }
+        }
+
+        if(frameDeltaTime > 0f)
+            effectiveTimeScale = stepCount * DEFAULT_TIME_STEP / frameDeltaTime;
+
+        return stepCount;
+    }
+
+    /**
+     * Method that gets how far the simulation is between its last step and the next one
+     *
+     * @return value in [0, 1) used to interpolate rendering between the last two steps
+     */
+    public float getInterpolationAlpha(){
+        return (float) (accumulatedTime / DEFAULT_TIME_STEP);
+    }
+
+    /**
+     * Method that sets how much real time advance can spend on steps in a single frame
+     *
+     * @param maxStepTime budget in seconds
+     */
+    public void setMaxStepTimePerFrame(float maxStepTime){
+        maxStepNanosPerFrame = (long) (maxStepTime * 1e9);
+    }
+
+    /**
+     * Method that gets the speed the simulation actually ran at during the last advance, lower
+     * than the requested time scale when the per frame budget was exceeded
+     *
+     * @return simulated time per real time of the last frame
+     */
+    public float getEffectiveTimeScale() {
+        return effectiveTimeScale;
+    }
+
+    /**
+     * Method that gets the number of bytes writeState writes for the current state
+     *
+     * @return size of the state in bytes
+     */
+    public int getStateSize(){
+        int stateSize = 8 + 8 + 8 + 4 + 4 + world.getStateSize() + 4;
+        for(Colony colony : colonies)
+            stateSize += 4 + colony.getStateSize();
+
+        return stateSize;
+    }
+
+    /**
+     * Method that writes the state of the world and of every colony into a buffer, along with
+     * the sensing mode and the optional features the simulation runs with
+     *
+     * @param buffer little endian buffer with at least getStateSize bytes remaining
+     */
+    public void writeState(ByteBuffer buffer){
+        buffer.putLong(seed);
+        buffer.putLong(tickCount);
+        buffer.putDouble(accumulatedTime);
+        buffer.putInt(sensingMode.ordinal());
+        int featureFlags = 0;
+        if(isFixedPointHeading)
+            featureFlags |= STATE_FIXED_POINT_HEADING_FLAG;
+        if(isVisibilityCacheEnabled())
+            featureFlags |= STATE_VISIBILITY_CACHE_FLAG;
+        if(isSensingMemoEnabled)
+            featureFlags |= STATE_SENSING_MEMO_FLAG;
+        buffer.putInt(featureFlags);
+        world.writeState(buffer);
+
+        buffer.putInt(colonies.size());
+        for(Colony colony : colonies){
+            buffer.putInt(colony.getPopulation().getCapacity());
+            colony.writeState(buffer);
+        }
+    }
+
+    /**
+     * Method that creates an engine from a state written by writeState
+     *
+     * @param buffer little endian buffer positioned at the state
+     * @param threadCount number of threads to step ants on, 0 steps them on the calling thread
+     * @return engine in the written state
+     */
+    public static SimulationEngine readState(ByteBuffer buffer, int threadCount){
+        long seed = buffer.getLong();
+        long tickCount = buffer.getLong();
+        double accumulatedTime = buffer.getDouble();
+        SensingMode sensingMode = SensingMode.values()[buffer.getInt()];
+        int featureFlags = buffer.getInt();
+
+        SimulationEngine engine = new SimulationEngine(World.readState(buffer), threadCount, seed);
+        engine.tickCount = tickCount;
+        engine.accumulatedTime = accumulatedTime;
+        // Set before the colonies are added, they take the settings of the engine
+        engine.setSensingMode(sensingMode);
+        engine.setFixedPointHeading((featureFlags & STATE_FIXED_POINT_HEADING_FLAG) != 0);
+        engine.setVisibilityCacheEnabled((featureFlags & STATE_VISIBILITY_CACHE_FLAG) != 0);
+        engine.setSensingMemoEnabled((featureFlags & STATE_SENSING_MEMO_FLAG) != 0);
+
+        int colonyCount = buffer.getInt();
+        for(int i = 0; i < colonyCount; ++i){
+            int antCapacity = buffer.getInt();
+            engine.addColony(new Point2D.Float(), antCapacity).readState(buffer);
+        }
+
+        return engine;
+    }
+
+    public void dispose(){
+        if(workerPool != null)
+            workerPool.shutdown();
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public List<Colony> getColonies() {
+        return Collections.unmodifiableList(colonies);
+    }
+
+    /**
+     * Method that gets the spatial index of the ants of all colonies, up to date with the last
+     * step
+     *
+     * @return index of the current ant positions
+     */
+    public AntSpatialIndex getAntIndex(){
+        if(!isAntIndexValid){
+            antIndex.rebuild(colonies);
+            isAntIndexValid = true;
+        }
+
+        return antIndex;
+    }
+
+    public SensingMode getSensingMode() {
+        return sensingMode;
+    }
+
+    /**
+     * Method that sets how the ants of all colonies, current and future, sense pheromones
+     *
+     * @param sensingMode random point sampling or precomputed stencils
+     */
+    public void setSensingMode(SensingMode sensingMode) {
+        this.sensingMode = sensingMode;
+        for(Colony colony : colonies)
+            colony.setSensingMode(sensingMode);
+    }
+
+    public boolean isFixedPointHeading() {
+        return isFixedPointHeading;
+    }
+
+    /**
+     * Method that sets how the ants of all colonies, current and future, keep their heading
+     *
+     * @param isFixedPointHeading true for heading steps with lookup tables, false for floating point angles
+     */
+    public void setFixedPointHeading(boolean isFixedPointHeading) {
+        this.isFixedPointHeading = isFixedPointHeading;
+        for(Colony colony : colonies)
+            colony.setFixedPointHeading(isFixedPointHeading);
+    }
+
+    public boolean isSensingMemoEnabled() {
+        return isSensingMemoEnabled;
+    }
+
+    /**
+     * Method that sets if ants of all colonies, current and future, stepped together in the same
+     * cell with the same goal and stencil heading share one stencil sensing of their view
+     *
+     * @param isSensingMemoEnabled true to share sensing
+     */
+    public void setSensingMemoEnabled(boolean isSensingMemoEnabled) {
+        this.isSensingMemoEnabled = isSensingMemoEnabled;
+        for(Colony colony : colonies)
+            colony.setSensingMemoEnabled(isSensingMemoEnabled);
+    }
+
+    public boolean isVisibilityCacheEnabled() {
+        return world.getVisibilityCache() != null;
+    }
+
+    /**
+     * Method that sets if ants look up how far they see from a cache of the world instead of
+     * casting every ray, see VisibilityCache
+     *
+     * @param isVisibilityCacheEnabled true to cache view ranges
+     */
+    public void setVisibilityCacheEnabled(boolean isVisibilityCacheEnabled) {
+        world.setVisibilityCacheEnabled(isVisibilityCacheEnabled, Ant.ANT_VIEW_RANGE);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+}
@@ -0,0 +1,117 @@
+package com.dujo.antcolonysimulator.simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that saves and restores the whole state of a simulation in a versioned binary format.
+ * The state is captured into a single buffer with bulk copies of the primitive arrays that hold
+ * it and written with one channel write, nothing is serialized object by object
+ */
+public final class SimulationSnapshot {
+    public static final String FILE_EXTENSION = ".acss";
+
+    // "ACSS" followed by the format version
+    private static final int SNAPSHOT_MAGIC = 0x41435353;
+    private static final int SNAPSHOT_VERSION = 5;
+    private static final int SNAPSHOT_HEADER_SIZE = 4 * 2;
+
+    private SimulationSnapshot(){
+    }
+
+    /**
+     * Method that captures the state of a simulation into a buffer, this is the only part of
+     * saving that has to happen between ticks
+     *
+     * @param engine simulation to capture
+     * @param buffer buffer to reuse, a new direct buffer is allocated if it is null or too small
+     * @return flipped buffer holding the snapshot
+     */
+    public static ByteBuffer capture(SimulationEngine engine, ByteBuffer buffer){
+        int snapshotSize = SNAPSHOT_HEADER_SIZE + engine.getStateSize();
+        if(buffer == null || buffer.capacity() < snapshotSize)
+            buffer = ByteBuffer.allocateDirect(snapshotSize + snapshotSize / 8);
+
+        buffer.clear();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(SNAPSHOT_MAGIC);
+        buffer.putInt(SNAPSHOT_VERSION);
+        engine.writeState(buffer);
+        buffer.flip();
+
+        return buffer;
+    }
+
+    /**
+     * Method that writes the state of a simulation into a snapshot file
+     *
+     * @param engine simulation to save
+     * @param path path of the snapshot
+     * @throws IOException if the file can't be written
+     */
+    public static void save(SimulationEngine engine, Path path) throws IOException {
+        write(capture(engine, null), path);
+    }
+
+    /**
+     * Method that writes a captured snapshot to a file. The snapshot is written next to the file
+     * first and moved over it afterwards, so an interrupted write never leaves a broken snapshot
+     *
+     * @param snapshot buffer returned by capture, its position is left unchanged
+     * @param path path of the snapshot
+     * @throws IOException if the file can't be written
+     */
+    public static void write(ByteBuffer snapshot, Path path) throws IOException {
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer buffer = snapshot.duplicate();
+
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+        }
+
+        try {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Method that restores a simulation from a snapshot file
+     *
+     * @param path path of the snapshot
+     * @param threadCount number of threads to step ants on, 0 steps them on the calling thread
+     * @return simulation in the saved state
+     * @throws IOException if the file can't be read or isn't a snapshot
+     */
+    public static SimulationEngine load(Path path, int threadCount) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() < SNAPSHOT_HEADER_SIZE)
+                throw new IOException("Not a snapshot: " + path);
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if(buffer.getInt() != SNAPSHOT_MAGIC)
+                throw new IOException("Not a snapshot: " + path);
+            int version = buffer.getInt();
+            if(version != SNAPSHOT_VERSION)
+                throw new IOException("Unsupported snapshot version " + version);
+
+            try {
+                return SimulationEngine.readState(buffer, threadCount);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt snapshot: " + path, e);
+            }
+        }
+    }
+}
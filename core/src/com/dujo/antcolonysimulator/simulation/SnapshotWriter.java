@@ -0,0 +1,69 @@
+package com.dujo.antcolonysimulator.simulation;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that saves snapshots of a running simulation without stalling it, the state is
+ * captured between ticks and written to disk by a background thread while the simulation
+ * keeps running
+ */
+public class SnapshotWriter {
+    private final ExecutorService writeExecutor;
+    // Buffer of the last capture, reused once its write is done
+    private ByteBuffer buffer;
+    private Future<Void> lastWrite;
+
+    public SnapshotWriter(){
+        writeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Snapshot writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Method that captures the state of a simulation and queues it to be written, has to be
+     * called between ticks
+     *
+     * @param engine simulation to save
+     * @param path path of the snapshot
+     * @return future that completes once the snapshot is on disk
+     */
+    public Future<Void> save(SimulationEngine engine, final Path path){
+        // A buffer that is still being written can't be reused, capture into a new one
+        ByteBuffer reusableBuffer = lastWrite == null || lastWrite.isDone() ? buffer : null;
+        final ByteBuffer snapshot = SimulationSnapshot.capture(engine, reusableBuffer);
+        buffer = snapshot;
+
+        lastWrite = writeExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                SimulationSnapshot.write(snapshot, path);
+                return null;
+            }
+        });
+        return lastWrite;
+    }
+
+    /**
+     * Method that waits for queued snapshots to be written and stops the writer thread
+     */
+    public void dispose(){
+        writeExecutor.shutdown();
+        try {
+            writeExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
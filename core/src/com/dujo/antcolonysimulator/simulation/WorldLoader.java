@@ -0,0 +1,197 @@
+package com.dujo.antcolonysimulator.simulation;
+
+import com.dujo.antcolonysimulator.world.OffHeapWorldStorage;
+import com.dujo.antcolonysimulator.world.World;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that creates worlds from map images, from the binary map format or from world files
+ * written by OffHeapWorldStorage, none of them needs a graphics context
+ */
+public final class WorldLoader {
+    public static final int WALL_COLOR = 0xA1A1A1;
+    public static final int FOOD_COLOR = 0x0DFF00;
+    public static final int FOOD_ON_MAP_CELL = 20;
+    public static final String WORLD_FILE_EXTENSION = ".acsw";
+
+    // "ACSM" followed by the format version
+    private static final int BINARY_MAGIC = 0x4143534D;
+    private static final int BINARY_VERSION = 1;
+    private static final int BINARY_HEADER_SIZE = 4 * 5;
+
+    private WorldLoader(){
+    }
+
+    /**
+     * Method that loads a world from a png map, a world file or a binary map, chosen by file
+     * extension. A world from a world file keeps writing its changes to the file
+     *
+     * @param path path of the map
+     * @return loaded world
+     * @throws IOException if the map can't be read
+     */
+    public static World load(Path path) throws IOException {
+        String fileName = path.getFileName().toString().toLowerCase();
+        if(fileName.endsWith(".png")) {
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                return loadFromImage(inputStream);
+            }
+        }
+        if(fileName.endsWith(WORLD_FILE_EXTENSION))
+            return new World(OffHeapWorldStorage.open(path));
+
+        return loadFromBinary(path);
+    }
+
+    /**
+     * Method that loads a world from a map image, wall colored pixels become walls and food
+     * colored pixels become food, the top row of the image is the top row of the world
+     *
+     * @param inputStream stream of the image
+     * @return loaded world
+     * @throws IOException if the image can't be read
+     */
+    public static World loadFromImage(InputStream inputStream) throws IOException {
+        BufferedImage worldImage = readImage(inputStream);
+        return fillFromImage(new World(worldImage.getWidth(), worldImage.getHeight(), 1), worldImage);
+    }
+
+    /**
+     * Method that loads a world from a map image into a new world file, later runs can open the
+     * world file with load instead of reading the image again
+     *
+     * @param inputStream stream of the image
+     * @param worldPath path of the world file, an existing file is overwritten
+     * @return loaded world
+     * @throws IOException if the image can't be read or the world file can't be created
+     */
+    public static World loadFromImage(InputStream inputStream, Path worldPath) throws IOException {
+        BufferedImage worldImage = readImage(inputStream);
+        World world = new World(OffHeapWorldStorage.create(worldPath, worldImage.getWidth(), worldImage.getHeight(), 1));
+        fillFromImage(world, worldImage);
+        world.flush();
+
+        return world;
+    }
+
+    private static BufferedImage readImage(InputStream inputStream) throws IOException {
+        BufferedImage worldImage = ImageIO.read(inputStream);
+        if(worldImage == null)
+            throw new IOException("Unsupported map image format");
+
+        return worldImage;
+    }
+
+    private static World fillFromImage(World world, BufferedImage worldImage){
+        int width = worldImage.getWidth();
+        int height = worldImage.getHeight();
+
+        for(int y = 0; y < height; y++)
+            for(int x = 0; x < width; x++){
+                int color = worldImage.getRGB(x, y) & 0xFFFFFF;
+
+                if(color == WALL_COLOR)
+                    world.setWall(world.getCellIndex(height - 1 - y, x), true);
+                else if(color == FOOD_COLOR)
+                    world.setFoodOnCell(world.getCellIndex(height - 1 - y, x), FOOD_ON_MAP_CELL);
+            }
+
+        world.updateWallDistances();
+        return world;
+    }
+
+    /**
+     * Method that loads a world written by saveToBinary
+     *
+     * @param path path of the binary map
+     * @return loaded world
+     * @throws IOException if the file can't be read or isn't a binary map
+     */
+    public static World loadFromBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BINARY_HEADER_SIZE);
+            readFully(channel, header);
+
+            if(header.getInt() != BINARY_MAGIC)
+                throw new IOException("Not a binary map: " + path);
+            int version = header.getInt();
+            if(version != BINARY_VERSION)
+                throw new IOException("Unsupported binary map version " + version);
+
+            int columnCount = header.getInt();
+            int rowCount = header.getInt();
+            int cellSize = header.getInt();
+            World world = new World(columnCount, rowCount, cellSize);
+
+            int cellCount = columnCount * rowCount;
+            ByteBuffer cells = ByteBuffer.allocate((cellCount + 7) / 8 + cellCount * 4);
+            readFully(channel, cells);
+
+            // Cells are stored row by row, independent of how the world indexes them
+            for(int i = 0; i < cellCount; ++i)
+                world.setWall(
+                        world.getCellIndex(i / columnCount, i % columnCount),
+                        (cells.get(i >>> 3) & (1 << (i & 7))) != 0
+                );
+
+            cells.position((cellCount + 7) / 8);
+            for(int i = 0; i < cellCount; ++i)
+                world.setFoodOnCell(world.getCellIndex(i / columnCount, i % columnCount), cells.getInt());
+
+            world.updateWallDistances();
+            return world;
+        }
+    }
+
+    /**
+     * Method that writes the walls and food of a world into the binary map format
+     *
+     * @param world world to save
+     * @param path path of the binary map
+     * @throws IOException if the file can't be written
+     */
+    public static void saveToBinary(World world, Path path) throws IOException {
+        int cellCount = world.getCellCount();
+        ByteBuffer buffer = ByteBuffer.allocate(BINARY_HEADER_SIZE + (cellCount + 7) / 8 + cellCount * 4);
+
+        buffer.putInt(BINARY_MAGIC);
+        buffer.putInt(BINARY_VERSION);
+        buffer.putInt(world.getColumnCount());
+        buffer.putInt(world.getRowCount());
+        buffer.putInt((int) world.getCellSize());
+
+        int columnCount = world.getColumnCount();
+        for(int i = 0; i < cellCount; i += 8){
+            int wallByte = 0;
+            for(int j = 0; j < 8 && i + j < cellCount; ++j)
+                if(world.isWall(world.getCellIndex((i + j) / columnCount, (i + j) % columnCount)))
+                    wallByte |= 1 << j;
+            buffer.put((byte) wallByte);
+        }
+        for(int i = 0; i < cellCount; ++i)
+            buffer.putInt(world.getFoodOnCell(world.getCellIndex(i / columnCount, i % columnCount)));
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining())
+            if(channel.read(buffer) < 0)
+                throw new IOException("Unexpected end of binary map");
+        buffer.flip();
+    }
+}
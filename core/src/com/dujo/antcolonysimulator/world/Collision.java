@@ -1,28 +1,50 @@
 package com.dujo.antcolonysimulator.world;
 
-import com.badlogic.gdx.math.Vector2;
-
+/**
+ * Class that holds the result of a raycast, it is meant to be reused between casts so the
+ * hot paths don't allocate
+ */
 public class Collision {
-    private Vector2 normalVector;
+    // Normal axes of the batched raycasts of World.castRays
+    public static final byte NO_HIT = 0;
+    public static final byte NORMAL_X = 1;
+    public static final byte NORMAL_Y = 2;
+
     private float distance;
+    private boolean isWallHit;
+    private float normalX;
+    private float normalY;
+
+    public Collision(){
+    }
 
-    Collision(float distance){
+    void setMiss(float distance){
         this.distance = distance;
+        isWallHit = false;
+        normalX = 0f;
+        normalY = 0f;
     }
 
-    public Vector2 getNormalVector() {
-        return normalVector;
+    void setWallHit(float distance, float normalX, float normalY){
+        this.distance = distance;
+        isWallHit = true;
+        this.normalX = normalX;
+        this.normalY = normalY;
     }
 
-    public void setNormalVector(Vector2 normalVector) {
-        this.normalVector = normalVector;
+    public boolean isWallHit() {
+        return isWallHit;
     }
 
-    public float getDistance() {
-        return distance;
+    public float getNormalX() {
+        return normalX;
     }
 
-    public void setDistance(float distance) {
-        this.distance = distance;
+    public float getNormalY() {
+        return normalY;
+    }
+
+    public float getDistance() {
+        return distance;
     }
 }
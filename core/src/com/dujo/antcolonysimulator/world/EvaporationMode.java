@@ -0,0 +1,6 @@
+package com.dujo.antcolonysimulator.world;
+
+public enum EvaporationMode {
+    EAGER,
+    LAZY
+}
@@ -0,0 +1,291 @@
+package com.dujo.antcolonysimulator.world;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Class that groups the food cells of a world into sources, cells that touch on a side belong
+ * to the same source. Sources are the sets of a union-find, a cell that gets food joins the
+ * sources of its neighbours with food and every food change updates the total of its source,
+ * so how much food a source has left is known with a single lookup. Sources never split, a
+ * source emptied in the middle stays one source. Since emptied cells keep their source the
+ * sources can't be rebuilt from the food left, they are saved with the state of the world
+ */
+public class FoodClusters {
+    private static final int[] NEIGHBOUR_ROW_OFFSETS = {-1, 1, 0, 0};
+    private static final int[] NEIGHBOUR_COLUMN_OFFSETS = {0, 0, -1, 1};
+
+    private final World world;
+
+    // Cluster of every cell plus one, 0 for cells that never had food, arrays are allocated per tile on demand
+    private final int[][] tileCellClusters;
+
+    private int clusterCount;
+    private int[] parents;
+    private int[] cellCounts;
+    private int[] foodLeft;
+    private int[] foodPlaced;
+
+    FoodClusters(World world, int tileCount){
+        this.world = world;
+        tileCellClusters = new int[tileCount][];
+        parents = new int[64];
+        cellCounts = new int[64];
+        foodLeft = new int[64];
+        foodPlaced = new int[64];
+    }
+
+    /**
+     * Method that records a change of the food on a cell
+     *
+     * @param cellIndex index of the cell
+     * @param oldFood food on the cell before the change
+     * @param newFood food on the cell after the change
+     */
+    void setFood(int cellIndex, int oldFood, int newFood){
+        int tileIndex = world.getTileIndex(cellIndex);
+        int localIndex = cellIndex & (World.TILE_CELL_COUNT - 1);
+        int[] cellClusters = tileCellClusters[tileIndex];
+
+        int cluster = cellClusters == null ? -1 : cellClusters[localIndex] - 1;
+        if(cluster == -1){
+            if(newFood <= 0)
+                return;
+
+            if(cellClusters == null){
+                cellClusters = new int[World.TILE_CELL_COUNT];
+                tileCellClusters[tileIndex] = cellClusters;
+            }
+            cluster = addCluster();
+            cellClusters[localIndex] = cluster + 1;
+        }
+
+        cluster = compressPath(cluster);
+        if(oldFood <= 0 && newFood > 0)
+            cluster = joinNeighbours(cellIndex, cluster);
+
+        foodLeft[cluster] += newFood - oldFood;
+        if(newFood > oldFood)
+            foodPlaced[cluster] += newFood - oldFood;
+    }
+
+    void clear(){
+        Arrays.fill(tileCellClusters, null);
+        clusterCount = 0;
+    }
+
+    /**
+     * Method that gets the number of bytes writeState writes for the current sources
+     *
+     * @return size of the state in bytes
+     */
+    int getStateSize(){
+        int stateSize = 4 * 2 + clusterCount * 4 * 4;
+        for(int[] cellClusters : tileCellClusters)
+            if(cellClusters != null)
+                stateSize += 4 + World.TILE_CELL_COUNT * 4;
+
+        return stateSize;
+    }
+
+    /**
+     * Method that writes the sources and the source of every cell into a buffer
+     *
+     * @param buffer little endian buffer with at least getStateSize bytes remaining
+     */
+    void writeState(ByteBuffer buffer){
+        buffer.putInt(clusterCount);
+        putInts(buffer, parents, clusterCount);
+        putInts(buffer, cellCounts, clusterCount);
+        putInts(buffer, foodLeft, clusterCount);
+        putInts(buffer, foodPlaced, clusterCount);
+
+        int tileCountPosition = buffer.position();
+        buffer.putInt(0);
+
+        int tileCount = 0;
+        for(int i = 0; i < tileCellClusters.length; ++i){
+            if(tileCellClusters[i] == null)
+                continue;
+
+            buffer.putInt(i);
+            putInts(buffer, tileCellClusters[i], World.TILE_CELL_COUNT);
+            ++tileCount;
+        }
+
+        buffer.putInt(tileCountPosition, tileCount);
+    }
+
+    /**
+     * Method that replaces the sources with the ones written by writeState
+     *
+     * @param buffer little endian buffer positioned at the state
+     */
+    void readState(ByteBuffer buffer){
+        clear();
+        clusterCount = buffer.getInt();
+        int length = Math.max(parents.length, clusterCount);
+        parents = getInts(buffer, clusterCount, length);
+        cellCounts = getInts(buffer, clusterCount, length);
+        foodLeft = getInts(buffer, clusterCount, length);
+        foodPlaced = getInts(buffer, clusterCount, length);
+
+        int tileCount = buffer.getInt();
+        for(int i = 0; i < tileCount; ++i){
+            int tileIndex = buffer.getInt();
+            tileCellClusters[tileIndex] = getInts(buffer, World.TILE_CELL_COUNT, World.TILE_CELL_COUNT);
+        }
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values, int count){
+        buffer.asIntBuffer().put(values, 0, count);
+        buffer.position(buffer.position() + count * 4);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int count, int length){
+        int[] values = new int[length];
+        IntBuffer intBuffer = buffer.asIntBuffer();
+        intBuffer.get(values, 0, count);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private int addCluster(){
+        if(clusterCount == parents.length){
+            int newLength = clusterCount * 2;
+            parents = Arrays.copyOf(parents, newLength);
+            cellCounts = Arrays.copyOf(cellCounts, newLength);
+            foodLeft = Arrays.copyOf(foodLeft, newLength);
+            foodPlaced = Arrays.copyOf(foodPlaced, newLength);
+        }
+
+        parents[clusterCount] = clusterCount;
+        cellCounts[clusterCount] = 1;
+        foodLeft[clusterCount] = 0;
+        foodPlaced[clusterCount] = 0;
+        return clusterCount++;
+    }
+
+    private int joinNeighbours(int cellIndex, int cluster){
+        int row = world.getCellRow(cellIndex);
+        int column = world.getCellColumn(cellIndex);
+
+        for(int i = 0; i < NEIGHBOUR_ROW_OFFSETS.length; ++i){
+            int neighbourRow = row + NEIGHBOUR_ROW_OFFSETS[i];
+            int neighbourColumn = column + NEIGHBOUR_COLUMN_OFFSETS[i];
+            if(world.checkCell(neighbourRow, neighbourColumn))
+                continue;
+
+            // Neighbours not labelled yet while the clusters are rebuilt join when they are reached
+            int neighbourCellIndex = world.getCellIndex(neighbourRow, neighbourColumn);
+            int neighbourLabel = getLabel(neighbourCellIndex);
+            if(neighbourLabel == -1 || !world.isFoodOnCell(neighbourCellIndex))
+                continue;
+
+            int neighbourCluster = compressPath(neighbourLabel);
+            if(neighbourCluster != cluster)
+                cluster = union(cluster, neighbourCluster);
+        }
+
+        return cluster;
+    }
+
+    private int union(int clusterA, int clusterB){
+        // Smaller cluster goes under the larger one so paths stay short
+        if(cellCounts[clusterA] < cellCounts[clusterB]){
+            int swap = clusterA;
+            clusterA = clusterB;
+            clusterB = swap;
+        }
+
+        parents[clusterB] = clusterA;
+        cellCounts[clusterA] += cellCounts[clusterB];
+        foodLeft[clusterA] += foodLeft[clusterB];
+        foodPlaced[clusterA] += foodPlaced[clusterB];
+        return clusterA;
+    }
+
+    private int compressPath(int cluster){
+        int root = findRoot(cluster);
+        while(parents[cluster] != root){
+            int parent = parents[cluster];
+            parents[cluster] = root;
+            cluster = parent;
+        }
+
+        return root;
+    }
+
+    // Doesn't change the parents, ants look clusters up on several threads at once
+    private int findRoot(int cluster){
+        while(parents[cluster] != cluster)
+            cluster = parents[cluster];
+
+        return cluster;
+    }
+
+    private int getLabel(int cellIndex){
+        int[] cellClusters = tileCellClusters[world.getTileIndex(cellIndex)];
+        return cellClusters == null ? -1 : cellClusters[cellIndex & (World.TILE_CELL_COUNT - 1)] - 1;
+    }
+
+    /**
+     * Method that finds the food source a cell belongs to
+     *
+     * @param cellIndex index of the cell
+     * @return index of the source, -1 if the cell never had food
+     */
+    public int getCluster(int cellIndex){
+        int cluster = getLabel(cellIndex);
+        return cluster == -1 ? -1 : findRoot(cluster);
+    }
+
+    /**
+     * @param cluster index of a source
+     * @return food the source has left
+     */
+    public int getFoodLeft(int cluster){
+        return foodLeft[cluster];
+    }
+
+    /**
+     * @param cluster index of a source
+     * @return all food ever placed in the source
+     */
+    public int getFoodPlaced(int cluster){
+        return foodPlaced[cluster];
+    }
+
+    /**
+     * @param cluster index of a source
+     * @return number of cells of the source
+     */
+    public int getCellCount(int cluster){
+        return cellCounts[cluster];
+    }
+
+    /**
+     * @return number of food sources
+     */
+    public int getSourceCount(){
+        int sourceCount = 0;
+        for(int i = 0; i < clusterCount; ++i)
+            if(parents[i] == i)
+                ++sourceCount;
+
+        return sourceCount;
+    }
+
+    /**
+     * @return number of food sources with no food left
+     */
+    public int getDepletedSourceCount(){
+        int depletedSourceCount = 0;
+        for(int i = 0; i < clusterCount; ++i)
+            if(parents[i] == i && foodLeft[i] <= 0)
+                ++depletedSourceCount;
+
+        return depletedSourceCount;
+    }
+}
@@ -0,0 +1,212 @@
+package com.dujo.antcolonysimulator.world;
+
+import java.util.Arrays;
+
+/**
+ * Class that keeps a pyramid of food occupancy counts of a world. The finest level counts the
+ * cells with food in blocks of 8x8 cells and every coarser level sums 2x2 blocks of the level
+ * below it, up to a single block covering the whole world. Searches descend only into blocks
+ * that hold food and can still contain a closer cell than the best one found so far
+ */
+class FoodOccupancyIndex {
+    private static final int BLOCK_SIZE_SHIFT = 3;
+    // Food cells hidden behind walls a search looks past before it gives up on closer food
+    private static final int MAX_HIDDEN_CELL_COUNT = 16;
+
+    private final World world;
+    private final int columnCount;
+    private final int rowCount;
+
+    // Level l has blocks of 8 << l cells, stored row by row
+    private final int[][] levelCounts;
+    private final int[] levelColumnCounts;
+
+    // Ants of a colony search on several threads at once
+    private static final ThreadLocal<Query> QUERY = new ThreadLocal<Query>(){
+        @Override
+        protected Query initialValue() {
+            return new Query();
+        }
+    };
+
+    FoodOccupancyIndex(World world){
+        this.world = world;
+        columnCount = world.getColumnCount();
+        rowCount = world.getRowCount();
+
+        int levelCount = 1;
+        while((columnCount - 1) >> (BLOCK_SIZE_SHIFT + levelCount - 1) > 0 ||
+                (rowCount - 1) >> (BLOCK_SIZE_SHIFT + levelCount - 1) > 0)
+            ++levelCount;
+
+        levelCounts = new int[levelCount][];
+        levelColumnCounts = new int[levelCount];
+        for(int level = 0; level < levelCount; ++level){
+            int shift = BLOCK_SIZE_SHIFT + level;
+            levelColumnCounts[level] = ((columnCount - 1) >> shift) + 1;
+            levelCounts[level] = new int[levelColumnCounts[level] * (((rowCount - 1) >> shift) + 1)];
+        }
+    }
+
+    /**
+     * Method that records a cell gaining or losing its food
+     *
+     * @param row row of the cell
+     * @param column column of the cell
+     * @param delta 1 if the cell got food, -1 if it ran out
+     */
+    void addCell(int row, int column, int delta){
+        for(int level = 0; level < levelCounts.length; ++level){
+            int shift = BLOCK_SIZE_SHIFT + level;
+            levelCounts[level][(row >> shift) * levelColumnCounts[level] + (column >> shift)] += delta;
+        }
+    }
+
+    void clear(){
+        for(int[] counts : levelCounts)
+            Arrays.fill(counts, 0);
+    }
+
+    int getFoodCellCount(){
+        return levelCounts[levelCounts.length - 1][0];
+    }
+
+    /**
+     * Method that finds the closest cell with food inside a view cone that is not hidden behind
+     * a wall, distances and lines of sight are measured between the point and cell centers. Cells
+     * closer than the best one found so far are checked for walls one by one, once too many of
+     * them are hidden the best cell found until then is kept
+     *
+     * @param x x coordinate of the point in cells
+     * @param y y coordinate of the point in cells
+     * @param directionX x component of the unit view direction
+     * @param directionY y component of the unit view direction
+     * @param cosHalfFieldOfView cosine of half the view cone angle
+     * @param range max distance in cells
+     * @return index of the closest cell or -1 if there is no food in view
+     */
+    int findNearest(float x, float y, float directionX, float directionY, float cosHalfFieldOfView, float range){
+        Query query = QUERY.get();
+        query.x = x;
+        query.y = y;
+        query.directionX = directionX;
+        query.directionY = directionY;
+        // Cosine of a right angle in floats is a tiny negative number, which would turn off pruning of blocks behind
+        query.cosHalfFieldOfView = Math.abs(cosHalfFieldOfView) < 1e-6f ? 0f : cosHalfFieldOfView;
+        query.bestDistanceSquared = range * range;
+        query.bestCellIndex = -1;
+        query.hiddenCellCount = 0;
+
+        searchBlock(query, levelCounts.length - 1, 0, 0);
+        return query.bestCellIndex;
+    }
+
+    private void searchBlock(Query query, int level, int blockRow, int blockColumn){
+        if(levelCounts[level][blockRow * levelColumnCounts[level] + blockColumn] == 0)
+            return;
+
+        int shift = BLOCK_SIZE_SHIFT + level;
+        int startRow = blockRow << shift;
+        int startColumn = blockColumn << shift;
+        int endRow = Math.min(startRow + (1 << shift), rowCount);
+        int endColumn = Math.min(startColumn + (1 << shift), columnCount);
+        if(!query.isBlockInView(startRow, endRow, startColumn, endColumn))
+            return;
+
+        if(level == 0){
+            searchCells(query, startRow, endRow, startColumn, endColumn);
+            return;
+        }
+
+        int childRow = blockRow << 1;
+        int childColumn = blockColumn << 1;
+        int childShift = shift - 1;
+        int childRowCount = ((rowCount - 1) >> childShift) + 1;
+        int childColumnCount = levelColumnCounts[level - 1];
+
+        // Child closer to the point first, so the best distance shrinks early and prunes more
+        int firstRow = query.y >= (childRow + 1) << childShift ? 1 : 0;
+        int firstColumn = query.x >= (childColumn + 1) << childShift ? 1 : 0;
+        for(int j = 0; j < 4; ++j){
+            int row = childRow + (firstRow ^ (j >> 1));
+            int column = childColumn + (firstColumn ^ (j & 1));
+            if(row < childRowCount && column < childColumnCount)
+                searchBlock(query, level - 1, row, column);
+        }
+    }
+
+    private void searchCells(Query query, int startRow, int endRow, int startColumn, int endColumn){
+        for(int row = startRow; row < endRow; ++row){
+            float deltaY = row + 0.5f - query.y;
+            for(int column = startColumn; column < endColumn; ++column){
+                float deltaX = column + 0.5f - query.x;
+                float distanceSquared = deltaX * deltaX + deltaY * deltaY;
+                if(distanceSquared > query.bestDistanceSquared || !query.isInCone(deltaX, deltaY, distanceSquared))
+                    continue;
+
+                int cellIndex = world.getCellIndex(row, column);
+                if(!world.isFoodOnCell(cellIndex))
+                    continue;
+
+                if(isInLineOfSight(query, deltaX, deltaY, distanceSquared)){
+                    query.bestDistanceSquared = distanceSquared;
+                    query.bestCellIndex = cellIndex;
+                }else if(++query.hiddenCellCount == MAX_HIDDEN_CELL_COUNT)
+                    // Nothing passes a negative distance, the search ends with the best cell so far
+                    query.bestDistanceSquared = -1f;
+            }
+        }
+    }
+
+    private boolean isInLineOfSight(Query query, float deltaX, float deltaY, float distanceSquared){
+        if(distanceSquared == 0f)
+            return true;
+
+        float cellSize = world.getCellSize();
+        float distance = (float) Math.sqrt(distanceSquared);
+        Collision collision = world.getFirstCollision(
+                query.x * cellSize, query.y * cellSize,
+                deltaX / distance, deltaY / distance,
+                distance * cellSize,
+                query.collision
+        );
+        return !collision.isWallHit() || collision.getDistance() >= distance * cellSize;
+    }
+
+    /**
+     * Class that holds a search in progress, coordinates are in cells
+     */
+    private static class Query{
+        float x;
+        float y;
+        float directionX;
+        float directionY;
+        float cosHalfFieldOfView;
+        float bestDistanceSquared;
+        int bestCellIndex;
+        int hiddenCellCount;
+        final Collision collision = new Collision();
+
+        boolean isBlockInView(int startRow, int endRow, int startColumn, int endColumn){
+            float deltaX = Math.max(Math.max(startColumn - x, x - endColumn), 0f);
+            float deltaY = Math.max(Math.max(startRow - y, y - endRow), 0f);
+            if(deltaX * deltaX + deltaY * deltaY > bestDistanceSquared)
+                return false;
+
+            // A cone of at most half a turn lies in front of the point, blocks fully behind it are out of view
+            if(cosHalfFieldOfView < 0f)
+                return true;
+            float maxDotX = Math.max((startColumn - x) * directionX, (endColumn - x) * directionX);
+            float maxDotY = Math.max((startRow - y) * directionY, (endRow - y) * directionY);
+            return maxDotX + maxDotY >= 0f;
+        }
+
+        boolean isInCone(float deltaX, float deltaY, float distanceSquared){
+            float dot = deltaX * directionX + deltaY * directionY;
+            float cosSquared = cosHalfFieldOfView * cosHalfFieldOfView;
+            if(cosHalfFieldOfView >= 0f)
+                return dot >= 0f && dot * dot >= cosSquared * distanceSquared;
+            return dot >= 0f || dot * dot <= cosSquared * distanceSquared;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.dujo.antcolonysimulator.world;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Class that keeps the cell data of a world in primitive array chunks on the Java heap, one
+ * chunk of each kind per tile. Chunks are allocated the first time a tile is written to and
+ * dropped back to a shared blank chunk once the tile is blank again, so memory grows with the
+ * explored area and not with the size of the map
+ */
+public class HeapWorldStorage implements WorldStorage {
+    private static final int WALL_WORD_COUNT = World.TILE_CELL_COUNT / 64;
+
+    // Shared chunks of blank tiles, never written to
+    private static final float[] EMPTY_PHEROMONE_CHUNK = new float[World.PHEROMONE_LAYER_COUNT * World.TILE_CELL_COUNT];
+    private static final int[] EMPTY_DEGRADE_TICK_CHUNK = new int[World.TILE_CELL_COUNT];
+    private static final int[] EMPTY_FOOD_CHUNK = new int[World.TILE_CELL_COUNT];
+    private static final long[] EMPTY_WALL_CHUNK = new long[WALL_WORD_COUNT];
+    private static final byte[] OPEN_WALL_DISTANCE_CHUNK = new byte[World.TILE_CELL_COUNT];
+
+    static {
+        Arrays.fill(OPEN_WALL_DISTANCE_CHUNK, (byte) World.WALL_DISTANCE_LIMIT_UNITS);
+    }
+
+    private final int columnCount;
+    private final int rowCount;
+    private final int cellSize;
+    private boolean isInitialized;
+    private boolean isWallDistanceValid;
+    private int degradeTick;
+
+    private final float[] tileMaxIntensities;
+    private final float[][] pheromoneChunks;
+    private final int[][] degradeTickChunks;
+    private final int[][] foodChunks;
+    private final long[][] wallChunks;
+    private final byte[][] wallDistanceChunks;
+    // Number of cells with food and with a wall in each tile, a chunk is dropped when it reaches 0
+    private final int[] tileFoodCellCounts;
+    private final int[] tileWallCellCounts;
+
+    public HeapWorldStorage(int columnCount, int rowCount, int cellSize){
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.cellSize = cellSize;
+        isWallDistanceValid = true;
+
+        int tileCount = World.getTileCount(columnCount, rowCount);
+        tileMaxIntensities = new float[tileCount];
+        pheromoneChunks = new float[tileCount][];
+        degradeTickChunks = new int[tileCount][];
+        foodChunks = new int[tileCount][];
+        wallChunks = new long[tileCount][];
+        wallDistanceChunks = new byte[tileCount][];
+        Arrays.fill(pheromoneChunks, EMPTY_PHEROMONE_CHUNK);
+        Arrays.fill(degradeTickChunks, EMPTY_DEGRADE_TICK_CHUNK);
+        Arrays.fill(foodChunks, EMPTY_FOOD_CHUNK);
+        Arrays.fill(wallChunks, EMPTY_WALL_CHUNK);
+        Arrays.fill(wallDistanceChunks, OPEN_WALL_DISTANCE_CHUNK);
+        tileFoodCellCounts = new int[tileCount];
+        tileWallCellCounts = new int[tileCount];
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return isInitialized;
+    }
+
+    @Override
+    public void setInitialized(boolean isInitialized) {
+        this.isInitialized = isInitialized;
+    }
+
+    @Override
+    public boolean isWallDistanceValid() {
+        return isWallDistanceValid;
+    }
+
+    @Override
+    public void setWallDistanceValid(boolean isWallDistanceValid) {
+        this.isWallDistanceValid = isWallDistanceValid;
+    }
+
+    @Override
+    public int getDegradeTick() {
+        return degradeTick;
+    }
+
+    @Override
+    public void setDegradeTick(int degradeTick) {
+        this.degradeTick = degradeTick;
+    }
+
+    @Override
+    public float getTileMaxIntensity(int tileIndex) {
+        return tileMaxIntensities[tileIndex];
+    }
+
+    @Override
+    public void setTileMaxIntensity(int tileIndex, float maxIntensity) {
+        tileMaxIntensities[tileIndex] = maxIntensity;
+    }
+
+    @Override
+    public void allocatePheromones(int tileIndex, int degradeTick) {
+        pheromoneChunks[tileIndex] = new float[World.PHEROMONE_LAYER_COUNT * World.TILE_CELL_COUNT];
+        degradeTickChunks[tileIndex] = new int[World.TILE_CELL_COUNT];
+        Arrays.fill(degradeTickChunks[tileIndex], degradeTick);
+    }
+
+    @Override
+    public void releasePheromones(int tileIndex) {
+        pheromoneChunks[tileIndex] = EMPTY_PHEROMONE_CHUNK;
+        degradeTickChunks[tileIndex] = EMPTY_DEGRADE_TICK_CHUNK;
+    }
+
+    @Override
+    public float getPheromone(int tileIndex, int valueIndex) {
+        return pheromoneChunks[tileIndex][valueIndex];
+    }
+
+    @Override
+    public void setPheromone(int tileIndex, int valueIndex, float intensity) {
+        pheromoneChunks[tileIndex][valueIndex] = intensity;
+    }
+
+    @Override
+    public void scalePheromones(int tileIndex, float ratio) {
+        float[] pheromoneChunk = pheromoneChunks[tileIndex];
+        for(int i = 0; i < pheromoneChunk.length; ++i)
+            pheromoneChunk[i] *= ratio;
+    }
+
+    @Override
+    public int getCellDegradeTick(int tileIndex, int localIndex) {
+        return degradeTickChunks[tileIndex][localIndex];
+    }
+
+    @Override
+    public void setCellDegradeTick(int tileIndex, int localIndex, int degradeTick) {
+        degradeTickChunks[tileIndex][localIndex] = degradeTick;
+    }
+
+    @Override
+    public int getFood(int tileIndex, int localIndex) {
+        return foodChunks[tileIndex][localIndex];
+    }
+
+    @Override
+    public void setFood(int tileIndex, int localIndex, int food) {
+        int[] foodChunk = foodChunks[tileIndex];
+        if(foodChunk == EMPTY_FOOD_CHUNK){
+            if(food == 0)
+                return;
+            foodChunk = foodChunks[tileIndex] = new int[World.TILE_CELL_COUNT];
+        }
+
+        if(foodChunk[localIndex] > 0)
+            --tileFoodCellCounts[tileIndex];
+        if(food > 0)
+            ++tileFoodCellCounts[tileIndex];
+        foodChunk[localIndex] = food;
+
+        if(tileFoodCellCounts[tileIndex] == 0)
+            foodChunks[tileIndex] = EMPTY_FOOD_CHUNK;
+    }
+
+    @Override
+    public long getWallWord(int tileIndex, int wordIndex) {
+        return wallChunks[tileIndex][wordIndex];
+    }
+
+    @Override
+    public void setWallWord(int tileIndex, int wordIndex, long wallBits) {
+        long[] wallChunk = wallChunks[tileIndex];
+        if(wallChunk == EMPTY_WALL_CHUNK){
+            if(wallBits == 0L)
+                return;
+            wallChunk = wallChunks[tileIndex] = new long[WALL_WORD_COUNT];
+        }
+
+        tileWallCellCounts[tileIndex] += Long.bitCount(wallBits) - Long.bitCount(wallChunk[wordIndex]);
+        wallChunk[wordIndex] = wallBits;
+
+        if(tileWallCellCounts[tileIndex] == 0)
+            wallChunks[tileIndex] = EMPTY_WALL_CHUNK;
+    }
+
+    @Override
+    public int getWallDistance(int tileIndex, int localIndex) {
+        return wallDistanceChunks[tileIndex][localIndex] & 0xFF;
+    }
+
+    @Override
+    public void setWallDistance(int tileIndex, int localIndex, int wallDistance) {
+        byte[] wallDistanceChunk = wallDistanceChunks[tileIndex];
+        if(wallDistanceChunk == OPEN_WALL_DISTANCE_CHUNK){
+            if(wallDistance == World.WALL_DISTANCE_LIMIT_UNITS)
+                return;
+            wallDistanceChunk = wallDistanceChunks[tileIndex] = OPEN_WALL_DISTANCE_CHUNK.clone();
+        }
+
+        wallDistanceChunk[localIndex] = (byte) wallDistance;
+    }
+
+    @Override
+    public void compactWallDistances(int tileIndex) {
+        if(Arrays.equals(wallDistanceChunks[tileIndex], OPEN_WALL_DISTANCE_CHUNK))
+            wallDistanceChunks[tileIndex] = OPEN_WALL_DISTANCE_CHUNK;
+    }
+
+    @Override
+    public void copyPheromonesTo(int tileIndex, ByteBuffer target) {
+        float[] pheromoneChunk = pheromoneChunks[tileIndex];
+        target.asFloatBuffer().put(pheromoneChunk);
+        target.position(target.position() + pheromoneChunk.length * 4);
+
+        int[] degradeTickChunk = degradeTickChunks[tileIndex];
+        target.asIntBuffer().put(degradeTickChunk);
+        target.position(target.position() + degradeTickChunk.length * 4);
+    }
+
+    @Override
+    public void copyPheromonesFrom(int tileIndex, ByteBuffer source) {
+        float[] pheromoneChunk = new float[World.PHEROMONE_LAYER_COUNT * World.TILE_CELL_COUNT];
+        source.asFloatBuffer().get(pheromoneChunk);
+        source.position(source.position() + pheromoneChunk.length * 4);
+
+        int[] degradeTickChunk = new int[World.TILE_CELL_COUNT];
+        source.asIntBuffer().get(degradeTickChunk);
+        source.position(source.position() + degradeTickChunk.length * 4);
+
+        pheromoneChunks[tileIndex] = pheromoneChunk;
+        degradeTickChunks[tileIndex] = degradeTickChunk;
+    }
+
+    @Override
+    public void copyTerrainTo(int tileIndex, ByteBuffer target) {
+        target.asIntBuffer().put(foodChunks[tileIndex]);
+        target.position(target.position() + World.TILE_CELL_COUNT * 4);
+
+        target.asLongBuffer().put(wallChunks[tileIndex]);
+        target.position(target.position() + WALL_WORD_COUNT * 8);
+
+        target.put(wallDistanceChunks[tileIndex]);
+    }
+
+    @Override
+    public void copyTerrainFrom(int tileIndex, ByteBuffer source) {
+        int[] foodChunk = new int[World.TILE_CELL_COUNT];
+        source.asIntBuffer().get(foodChunk);
+        source.position(source.position() + World.TILE_CELL_COUNT * 4);
+
+        long[] wallChunk = new long[WALL_WORD_COUNT];
+        source.asLongBuffer().get(wallChunk);
+        source.position(source.position() + WALL_WORD_COUNT * 8);
+
+        byte[] wallDistanceChunk = new byte[World.TILE_CELL_COUNT];
+        source.get(wallDistanceChunk);
+
+        // Blank parts go back to the shared chunks
+        tileFoodCellCounts[tileIndex] = 0;
+        for(int food : foodChunk)
+            if(food > 0)
+                ++tileFoodCellCounts[tileIndex];
+        foodChunks[tileIndex] = tileFoodCellCounts[tileIndex] > 0 ? foodChunk : EMPTY_FOOD_CHUNK;
+
+        tileWallCellCounts[tileIndex] = 0;
+        for(long wallBits : wallChunk)
+            tileWallCellCounts[tileIndex] += Long.bitCount(wallBits);
+        wallChunks[tileIndex] = tileWallCellCounts[tileIndex] > 0 ? wallChunk : EMPTY_WALL_CHUNK;
+
+        wallDistanceChunks[tileIndex] = wallDistanceChunk;
+        compactWallDistances(tileIndex);
+    }
+
+    @Override
+    public boolean isTileAllocated(int tileIndex) {
+        return pheromoneChunks[tileIndex] != EMPTY_PHEROMONE_CHUNK || foodChunks[tileIndex] != EMPTY_FOOD_CHUNK ||
+                wallChunks[tileIndex] != EMPTY_WALL_CHUNK || wallDistanceChunks[tileIndex] != OPEN_WALL_DISTANCE_CHUNK;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
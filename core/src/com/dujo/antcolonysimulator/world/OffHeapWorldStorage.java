@@ -0,0 +1,419 @@
+package com.dujo.antcolonysimulator.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that keeps the cell data of a world outside of the Java heap, in direct buffers or in
+ * buffers mapped from a file. A mapped world file holds the whole state of the world, so it can
+ * be reopened by a later run without loading the map again. Every tile has a fixed region in
+ * the file and blank regions are never written, so on file systems with sparse files only the
+ * explored area takes up disk and memory
+ */
+public class OffHeapWorldStorage implements WorldStorage {
+    // "ACSW" followed by the format version
+    private static final int FILE_MAGIC = 0x41435357;
+    private static final int FILE_VERSION = 1;
+
+    private static final int MAGIC_POSITION = 0;
+    private static final int VERSION_POSITION = 4;
+    private static final int COLUMN_COUNT_POSITION = 8;
+    private static final int ROW_COUNT_POSITION = 12;
+    private static final int CELL_SIZE_POSITION = 16;
+    private static final int FLAGS_POSITION = 20;
+    private static final int DEGRADE_TICK_POSITION = 24;
+    private static final int HEADER_SIZE = 64;
+
+    // Flags are 0 in a new file, so the wall distance flag is set when they are out of date
+    private static final int INITIALIZED_FLAG = 1;
+    private static final int WALL_DISTANCE_DIRTY_FLAG = 2;
+
+    // Layout of the region of a tile
+    private static final int PHEROMONE_OFFSET = 0;
+    private static final int DEGRADE_TICK_OFFSET = PHEROMONE_OFFSET + World.PHEROMONE_LAYER_COUNT * World.TILE_CELL_COUNT * 4;
+    private static final int FOOD_OFFSET = DEGRADE_TICK_OFFSET + World.TILE_CELL_COUNT * 4;
+    private static final int WALL_OFFSET = FOOD_OFFSET + World.TILE_CELL_COUNT * 4;
+    private static final int WALL_DISTANCE_OFFSET = WALL_OFFSET + World.TILE_CELL_COUNT / 8;
+    private static final int TILE_SIZE_IN_BYTES = WALL_DISTANCE_OFFSET + World.TILE_CELL_COUNT;
+
+    // Tiles are split over buffers of up to 2^14 tiles (about 750 MB) since a buffer is limited to 2 GB
+    private static final int SEGMENT_TILE_SHIFT = 14;
+    private static final int SEGMENT_TILE_COUNT = 1 << SEGMENT_TILE_SHIFT;
+
+    private final FileChannel channel;
+    private final ByteBuffer header;
+    private final ByteBuffer[] segments;
+    private final int columnCount;
+    private final int rowCount;
+    private final int cellSize;
+
+    private OffHeapWorldStorage(FileChannel channel, ByteBuffer header, ByteBuffer[] segments){
+        this.channel = channel;
+        this.header = header;
+        this.segments = segments;
+
+        columnCount = header.getInt(COLUMN_COUNT_POSITION);
+        rowCount = header.getInt(ROW_COUNT_POSITION);
+        cellSize = header.getInt(CELL_SIZE_POSITION);
+    }
+
+    /**
+     * Method that creates a storage in direct buffers
+     *
+     * @param columnCount number of columns of the world
+     * @param rowCount number of rows of the world
+     * @param cellSize size of a cell
+     * @return storage of a blank world
+     */
+    public static OffHeapWorldStorage allocateDirect(int columnCount, int rowCount, int cellSize){
+        int tileCount = World.getTileCount(columnCount, rowCount);
+
+        ByteBuffer header = ByteBuffer.allocateDirect(getHeaderSize(tileCount)).order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader(header, columnCount, rowCount, cellSize);
+
+        ByteBuffer[] segments = new ByteBuffer[getSegmentCount(tileCount)];
+        for(int i = 0; i < segments.length; ++i)
+            segments[i] = ByteBuffer.allocateDirect(getSegmentSize(tileCount, i)).order(ByteOrder.LITTLE_ENDIAN);
+
+        return new OffHeapWorldStorage(null, header, segments);
+    }
+
+    /**
+     * Method that creates a world file and maps it, an existing file is overwritten
+     *
+     * @param path path of the world file
+     * @param columnCount number of columns of the world
+     * @param rowCount number of rows of the world
+     * @param cellSize size of a cell
+     * @return storage of a blank world
+     * @throws IOException if the file can't be created
+     */
+    public static OffHeapWorldStorage create(Path path, int columnCount, int rowCount, int cellSize) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            int tileCount = World.getTileCount(columnCount, rowCount);
+            ByteBuffer header = map(channel, 0, getHeaderSize(tileCount));
+            writeHeader(header, columnCount, rowCount, cellSize);
+
+            return new OffHeapWorldStorage(channel, header, mapSegments(channel, tileCount));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Method that maps an existing world file
+     *
+     * @param path path of the world file
+     * @return storage with the state of the world file
+     * @throws IOException if the file can't be read or isn't a world file
+     */
+    public static OffHeapWorldStorage open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            if(channel.size() < HEADER_SIZE)
+                throw new IOException("Not a world file: " + path);
+
+            ByteBuffer header = map(channel, 0, HEADER_SIZE);
+            if(header.getInt(MAGIC_POSITION) != FILE_MAGIC)
+                throw new IOException("Not a world file: " + path);
+            int version = header.getInt(VERSION_POSITION);
+            if(version != FILE_VERSION)
+                throw new IOException("Unsupported world file version " + version);
+
+            int tileCount = World.getTileCount(header.getInt(COLUMN_COUNT_POSITION), header.getInt(ROW_COUNT_POSITION));
+            header = map(channel, 0, getHeaderSize(tileCount));
+
+            return new OffHeapWorldStorage(channel, header, mapSegments(channel, tileCount));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void writeHeader(ByteBuffer header, int columnCount, int rowCount, int cellSize){
+        header.putInt(MAGIC_POSITION, FILE_MAGIC);
+        header.putInt(VERSION_POSITION, FILE_VERSION);
+        header.putInt(COLUMN_COUNT_POSITION, columnCount);
+        header.putInt(ROW_COUNT_POSITION, rowCount);
+        header.putInt(CELL_SIZE_POSITION, cellSize);
+        header.putInt(FLAGS_POSITION, 0);
+        header.putInt(DEGRADE_TICK_POSITION, 0);
+    }
+
+    private static ByteBuffer[] mapSegments(FileChannel channel, int tileCount) throws IOException {
+        long position = getHeaderSize(tileCount);
+
+        ByteBuffer[] segments = new ByteBuffer[getSegmentCount(tileCount)];
+        for(int i = 0; i < segments.length; ++i){
+            segments[i] = map(channel, position, getSegmentSize(tileCount, i));
+            position += segments[i].capacity();
+        }
+
+        return segments;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, int size) throws IOException {
+        // Mapping past the end grows the file without writing the new part
+        return channel.map(FileChannel.MapMode.READ_WRITE, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Method that gets the size of the header and the tile table, rounded up to a whole page
+     * so tile regions are page aligned
+     */
+    private static int getHeaderSize(int tileCount){
+        return (HEADER_SIZE + tileCount * 4 + 4095) & ~4095;
+    }
+
+    private static int getSegmentCount(int tileCount){
+        return (tileCount + SEGMENT_TILE_COUNT - 1) >> SEGMENT_TILE_SHIFT;
+    }
+
+    private static int getSegmentSize(int tileCount, int segmentIndex){
+        return Math.min(SEGMENT_TILE_COUNT, tileCount - (segmentIndex << SEGMENT_TILE_SHIFT)) * TILE_SIZE_IN_BYTES;
+    }
+
+    private ByteBuffer getSegment(int tileIndex){
+        return segments[tileIndex >>> SEGMENT_TILE_SHIFT];
+    }
+
+    private static int getTileOffset(int tileIndex){
+        return (tileIndex & (SEGMENT_TILE_COUNT - 1)) * TILE_SIZE_IN_BYTES;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return (header.getInt(FLAGS_POSITION) & INITIALIZED_FLAG) != 0;
+    }
+
+    @Override
+    public void setInitialized(boolean isInitialized) {
+        setFlag(INITIALIZED_FLAG, isInitialized);
+    }
+
+    @Override
+    public boolean isWallDistanceValid() {
+        return (header.getInt(FLAGS_POSITION) & WALL_DISTANCE_DIRTY_FLAG) == 0;
+    }
+
+    @Override
+    public void setWallDistanceValid(boolean isWallDistanceValid) {
+        setFlag(WALL_DISTANCE_DIRTY_FLAG, !isWallDistanceValid);
+    }
+
+    private void setFlag(int flag, boolean isSet){
+        int flags = header.getInt(FLAGS_POSITION);
+        header.putInt(FLAGS_POSITION, isSet ? flags | flag : flags & ~flag);
+    }
+
+    @Override
+    public int getDegradeTick() {
+        return header.getInt(DEGRADE_TICK_POSITION);
+    }
+
+    @Override
+    public void setDegradeTick(int degradeTick) {
+        header.putInt(DEGRADE_TICK_POSITION, degradeTick);
+    }
+
+    @Override
+    public float getTileMaxIntensity(int tileIndex) {
+        return header.getFloat(HEADER_SIZE + tileIndex * 4);
+    }
+
+    @Override
+    public void setTileMaxIntensity(int tileIndex, float maxIntensity) {
+        header.putFloat(HEADER_SIZE + tileIndex * 4, maxIntensity);
+    }
+
+    @Override
+    public void allocatePheromones(int tileIndex, int degradeTick) {
+        // Pheromones of a tile without any are already 0, only the degrade ticks have to be set
+        ByteBuffer segment = getSegment(tileIndex);
+        int offset = getTileOffset(tileIndex) + DEGRADE_TICK_OFFSET;
+        for(int i = 0; i < World.TILE_CELL_COUNT; ++i)
+            segment.putInt(offset + i * 4, degradeTick);
+    }
+
+    @Override
+    public void releasePheromones(int tileIndex) {
+        ByteBuffer segment = getSegment(tileIndex);
+        int offset = getTileOffset(tileIndex);
+        for(int i = PHEROMONE_OFFSET; i < FOOD_OFFSET; i += 8)
+            segment.putLong(offset + i, 0L);
+    }
+
+    @Override
+    public float getPheromone(int tileIndex, int valueIndex) {
+        return getSegment(tileIndex).getFloat(getTileOffset(tileIndex) + PHEROMONE_OFFSET + valueIndex * 4);
+    }
+
+    @Override
+    public void setPheromone(int tileIndex, int valueIndex, float intensity) {
+        getSegment(tileIndex).putFloat(getTileOffset(tileIndex) + PHEROMONE_OFFSET + valueIndex * 4, intensity);
+    }
+
+    @Override
+    public void scalePheromones(int tileIndex, float ratio) {
+        ByteBuffer segment = getSegment(tileIndex);
+        int offset = getTileOffset(tileIndex);
+        for(int i = offset + PHEROMONE_OFFSET; i < offset + DEGRADE_TICK_OFFSET; i += 4)
+            segment.putFloat(i, segment.getFloat(i) * ratio);
+    }
+
+    @Override
+    public int getCellDegradeTick(int tileIndex, int localIndex) {
+        return getSegment(tileIndex).getInt(getTileOffset(tileIndex) + DEGRADE_TICK_OFFSET + localIndex * 4);
+    }
+
+    @Override
+    public void setCellDegradeTick(int tileIndex, int localIndex, int degradeTick) {
+        getSegment(tileIndex).putInt(getTileOffset(tileIndex) + DEGRADE_TICK_OFFSET + localIndex * 4, degradeTick);
+    }
+
+    @Override
+    public int getFood(int tileIndex, int localIndex) {
+        return getSegment(tileIndex).getInt(getTileOffset(tileIndex) + FOOD_OFFSET + localIndex * 4);
+    }
+
+    @Override
+    public void setFood(int tileIndex, int localIndex, int food) {
+        getSegment(tileIndex).putInt(getTileOffset(tileIndex) + FOOD_OFFSET + localIndex * 4, food);
+    }
+
+    @Override
+    public long getWallWord(int tileIndex, int wordIndex) {
+        return getSegment(tileIndex).getLong(getTileOffset(tileIndex) + WALL_OFFSET + wordIndex * 8);
+    }
+
+    @Override
+    public void setWallWord(int tileIndex, int wordIndex, long wallBits) {
+        getSegment(tileIndex).putLong(getTileOffset(tileIndex) + WALL_OFFSET + wordIndex * 8, wallBits);
+    }
+
+    @Override
+    public int getWallDistance(int tileIndex, int localIndex) {
+        // Stored as the distance below the limit so never written cells are open
+        int storedDistance = getSegment(tileIndex).get(getTileOffset(tileIndex) + WALL_DISTANCE_OFFSET + localIndex) & 0xFF;
+        return World.WALL_DISTANCE_LIMIT_UNITS - storedDistance;
+    }
+
+    @Override
+    public void setWallDistance(int tileIndex, int localIndex, int wallDistance) {
+        int position = getTileOffset(tileIndex) + WALL_DISTANCE_OFFSET + localIndex;
+        ByteBuffer segment = getSegment(tileIndex);
+
+        // Skip writes of open cells to untouched pages
+        byte storedDistance = (byte) (World.WALL_DISTANCE_LIMIT_UNITS - wallDistance);
+        if(segment.get(position) != storedDistance)
+            segment.put(position, storedDistance);
+    }
+
+    @Override
+    public void compactWallDistances(int tileIndex) {
+    }
+
+    @Override
+    public void copyPheromonesTo(int tileIndex, ByteBuffer target) {
+        copyTo(tileIndex, PHEROMONE_OFFSET, FOOD_OFFSET, target);
+    }
+
+    @Override
+    public void copyPheromonesFrom(int tileIndex, ByteBuffer source) {
+        copyFrom(tileIndex, PHEROMONE_OFFSET, FOOD_OFFSET, source);
+    }
+
+    @Override
+    public void copyTerrainTo(int tileIndex, ByteBuffer target) {
+        copyTo(tileIndex, FOOD_OFFSET, WALL_DISTANCE_OFFSET, target);
+        for(int i = 0; i < World.TILE_CELL_COUNT; ++i)
+            target.put((byte) getWallDistance(tileIndex, i));
+    }
+
+    @Override
+    public void copyTerrainFrom(int tileIndex, ByteBuffer source) {
+        copyFrom(tileIndex, FOOD_OFFSET, WALL_DISTANCE_OFFSET, source);
+        for(int i = 0; i < World.TILE_CELL_COUNT; ++i)
+            setWallDistance(tileIndex, i, source.get() & 0xFF);
+    }
+
+    private void copyTo(int tileIndex, int startOffset, int endOffset, ByteBuffer target){
+        int offset = getTileOffset(tileIndex);
+        ByteBuffer region = getSegment(tileIndex).duplicate();
+        region.limit(offset + endOffset);
+        region.position(offset + startOffset);
+        target.put(region);
+    }
+
+    private void copyFrom(int tileIndex, int startOffset, int endOffset, ByteBuffer source){
+        ByteBuffer region = source.duplicate();
+        region.limit(source.position() + endOffset - startOffset);
+        source.position(region.limit());
+
+        ByteBuffer tileRegion = getSegment(tileIndex).duplicate();
+        tileRegion.position(getTileOffset(tileIndex) + startOffset);
+        tileRegion.put(region);
+    }
+
+    @Override
+    public boolean isTileAllocated(int tileIndex) {
+        if(getTileMaxIntensity(tileIndex) > 0f)
+            return true;
+
+        ByteBuffer segment = getSegment(tileIndex);
+        int offset = getTileOffset(tileIndex);
+        for(int i = offset + FOOD_OFFSET; i < offset + TILE_SIZE_IN_BYTES; ++i)
+            if(segment.get(i) != 0)
+                return true;
+
+        return false;
+    }
+
+    @Override
+    public void flush() {
+        if(channel == null)
+            return;
+
+        ((MappedByteBuffer) header).force();
+        for(ByteBuffer segment : segments)
+            ((MappedByteBuffer) segment).force();
+    }
+
+    @Override
+    public void close() {
+        if(channel == null)
+            return;
+
+        flush();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
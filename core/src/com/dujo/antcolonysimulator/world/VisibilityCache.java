@@ -0,0 +1,204 @@
+package com.dujo.antcolonysimulator.world;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class that caches how far can be seen from a cell before a wall, for every cell and heading
+ * bucket. A range is cast once from the center of the cell along the middle of the bucket and
+ * shared by everything looking from that cell, so it can be off by about a cell for viewers away
+ * from the center. Every wall change drops the ranges of the tiles within view range of it, they
+ * are cast again when next looked up.
+ * The ranges of a tile take TILE_BYTES (128 KB) and are only allocated when something looks from
+ * the tile, so memory grows with the area ants have been in, up to about 47 MB for a fully
+ * explored 600x600 map
+ */
+public class VisibilityCache {
+    public static final int HEADING_BUCKET_COUNT = 64;
+    public static final int TILE_BYTES = World.TILE_CELL_COUNT * HEADING_BUCKET_COUNT * 2;
+    private static final float BUCKET_STEP = (float) (Math.PI * 2.0 / HEADING_BUCKET_COUNT);
+    // Ranges are stored in 1 / RANGE_SCALE of a cell plus one, 0 marks a range not cast yet
+    private static final float RANGE_SCALE = 64f;
+
+    private static final float[] BUCKET_DIRECTIONS_X = new float[HEADING_BUCKET_COUNT];
+    private static final float[] BUCKET_DIRECTIONS_Y = new float[HEADING_BUCKET_COUNT];
+
+    static {
+        for(int i = 0; i < HEADING_BUCKET_COUNT; ++i){
+            BUCKET_DIRECTIONS_X[i] = (float) Math.cos(i * BUCKET_STEP);
+            BUCKET_DIRECTIONS_Y[i] = (float) Math.sin(i * BUCKET_STEP);
+        }
+    }
+
+    // Viewers of a world look up ranges on several threads at once
+    private static final ThreadLocal<Batch> BATCH = new ThreadLocal<Batch>(){
+        @Override
+        protected Batch initialValue() {
+            return new Batch();
+        }
+    };
+
+    private final World world;
+    private final float viewRange;
+    // Cells from a changed wall whose rays can reach it
+    private final int invalidateRadius;
+    private final int tileColumnCount;
+    private final int tileRowCount;
+
+    // Ranges of the cells of a tile, cell by cell and bucket by bucket, allocated on first look up.
+    // Tiles are published atomically so every viewer sees an allocated tile fully zeroed
+    private final AtomicReferenceArray<short[]> tileRanges;
+
+    private final AtomicLong hitCount;
+    private final AtomicLong raycastCount;
+
+    VisibilityCache(World world, float viewRange){
+        this.world = world;
+        this.viewRange = viewRange;
+        // Raycasts report hits up to one and a half cells past the range, the center is up to one more away
+        invalidateRadius = (int) Math.ceil(viewRange / world.getCellSize()) + 3;
+        tileColumnCount = (world.getColumnCount() + World.TILE_SIZE - 1) / World.TILE_SIZE;
+        tileRowCount = (world.getRowCount() + World.TILE_SIZE - 1) / World.TILE_SIZE;
+
+        tileRanges = new AtomicReferenceArray<>(tileColumnCount * tileRowCount);
+        hitCount = new AtomicLong();
+        raycastCount = new AtomicLong();
+    }
+
+    /**
+     * @param angle angle in radians, any number of turns
+     * @return bucket of the closest cached heading
+     */
+    public static int getHeadingBucket(float angle){
+        return Math.round(angle / BUCKET_STEP) & (HEADING_BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Method that looks up the view ranges of a batch of headings from a cell, ranges not cached
+     * yet are cast together and stored
+     *
+     * @param cellIndex index of the cell looked from
+     * @param buckets heading bucket of every view direction
+     * @param count number of view directions
+     * @param ranges distance to the first wall in every direction, at most the view range of the cache
+     */
+    public void getViewRanges(int cellIndex, int[] buckets, int count, float[] ranges){
+        int tileIndex = world.getTileIndex(cellIndex);
+        short[] cellRanges = tileRanges.get(tileIndex);
+        if(cellRanges == null){
+            // Two threads can allocate the same tile, the one that loses uses the tile of the other
+            cellRanges = new short[World.TILE_CELL_COUNT * HEADING_BUCKET_COUNT];
+            if(!tileRanges.compareAndSet(tileIndex, null, cellRanges))
+                cellRanges = tileRanges.get(tileIndex);
+        }
+        int start = (cellIndex & (World.TILE_CELL_COUNT - 1)) * HEADING_BUCKET_COUNT;
+
+        // Every missing bucket is cast once even if several directions fall into it
+        Batch batch = BATCH.get();
+        long castBuckets = 0L;
+        int castCount = 0;
+        for(int i = 0; i < count; ++i){
+            int bucket = buckets[i];
+            if(cellRanges[start + bucket] != 0 || (castBuckets & 1L << bucket) != 0L)
+                continue;
+
+            castBuckets |= 1L << bucket;
+            batch.buckets[castCount] = bucket;
+            batch.directionsX[castCount] = BUCKET_DIRECTIONS_X[bucket];
+            batch.directionsY[castCount] = BUCKET_DIRECTIONS_Y[bucket];
+            ++castCount;
+        }
+
+        float cellSize = world.getCellSize();
+        if(castCount > 0){
+            float centerX = (world.getCellColumn(cellIndex) + 0.5f) * cellSize;
+            float centerY = (world.getCellRow(cellIndex) + 0.5f) * cellSize;
+            world.castRays(centerX, centerY, batch.directionsX, batch.directionsY, castCount, viewRange,
+                    batch.distances, batch.normalAxes);
+
+            for(int i = 0; i < castCount; ++i){
+                float range = Math.min(batch.distances[i] / cellSize * RANGE_SCALE, Short.MAX_VALUE - 1);
+                cellRanges[start + batch.buckets[i]] = (short) (range + 1f);
+            }
+            raycastCount.addAndGet(castCount);
+        }
+        hitCount.addAndGet(count - castCount);
+
+        // Cached and freshly cast ranges are read back the same way so results don't depend on timing
+        for(int i = 0; i < count; ++i)
+            ranges[i] = Math.min((cellRanges[start + buckets[i]] - 1) / RANGE_SCALE * cellSize, viewRange);
+    }
+
+    /**
+     * Method that drops the ranges of the tiles a changed wall can be seen from, only called
+     * while nothing looks ranges up
+     *
+     * @param row row of the changed cell
+     * @param column column of the changed cell
+     */
+    void invalidate(int row, int column){
+        int startTileRow = Math.max(0, row - invalidateRadius) / World.TILE_SIZE;
+        int endTileRow = Math.min(tileRowCount - 1, (row + invalidateRadius) / World.TILE_SIZE);
+        int startTileColumn = Math.max(0, column - invalidateRadius) / World.TILE_SIZE;
+        int endTileColumn = Math.min(tileColumnCount - 1, (column + invalidateRadius) / World.TILE_SIZE);
+
+        for(int tileRow = startTileRow; tileRow <= endTileRow; ++tileRow)
+            for(int tileColumn = startTileColumn; tileColumn <= endTileColumn; ++tileColumn)
+                tileRanges.set(tileRow * tileColumnCount + tileColumn, null);
+    }
+
+    /**
+     * @return number of tiles whose ranges are allocated, each takes TILE_BYTES
+     */
+    public int getAllocatedTileCount(){
+        int allocatedTileCount = 0;
+        for(int i = 0; i < tileRanges.length(); ++i)
+            if(tileRanges.get(i) != null)
+                ++allocatedTileCount;
+
+        return allocatedTileCount;
+    }
+
+    public float getViewRange(){
+        return viewRange;
+    }
+
+    /**
+     * @return number of ranges found in the cache since the counts were last reset
+     */
+    public long getHitCount(){
+        return hitCount.get();
+    }
+
+    /**
+     * @return number of rays cast to fill the cache since the counts were last reset
+     */
+    public long getRaycastCount(){
+        return raycastCount.get();
+    }
+
+    /**
+     * @return share of the looked up ranges that were found in the cache, 0 before any look up
+     */
+    public float getHitRate(){
+        long hits = hitCount.get();
+        long lookups = hits + raycastCount.get();
+        return lookups == 0L ? 0f : (float) hits / lookups;
+    }
+
+    public void resetCounts(){
+        hitCount.set(0L);
+        raycastCount.set(0L);
+    }
+
+    /**
+     * Class that holds the rays of a look up in progress
+     */
+    private static class Batch{
+        final int[] buckets = new int[HEADING_BUCKET_COUNT];
+        final float[] directionsX = new float[HEADING_BUCKET_COUNT];
+        final float[] directionsY = new float[HEADING_BUCKET_COUNT];
+        final float[] distances = new float[HEADING_BUCKET_COUNT];
+        final byte[] normalAxes = new byte[HEADING_BUCKET_COUNT];
+    }
+}
@@ -1,90 +1,327 @@
 package com.dujo.antcolonysimulator.world;
 
-import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.MathUtils;
 import com.dujo.antcolonysimulator.ant.AntPheromone;
 import com.dujo.antcolonysimulator.common.Cooldown;
 
 import java.awt.geom.Point2D;
+import java.nio.ByteBuffer;
 
 
+/**
+ * Class that holds the state of every cell in the world. The world is split into square tiles
+ * and the cell data of each tile (pheromones of every colony and pheromone type, a packed wall
+ * bitmap, food and wall distances) is kept in a WorldStorage, on the heap by default or off
+ * heap in a file that can be reopened later. Cells are addressed by a tile major cell index
+ * obtained from getCellIndex. Only tiles that hold pheromones are active and visited by
+ * evaporation
+ */
 public class World {
     public static final int MAX_COLONY_COUNT = 3;
+    public static final int PHEROMONE_COUNT = AntPheromone.values().length;
     public static final float MAX_PHEROMONE_INTENSITY = 100.0f;
     public static final float MAX_REPELLENT_INTENSITY = 200.0f;
     public static final float MAX_FOOD_ON_CELL = 100.0f;
 
     public static float PHEROMONE_DEGRADE_PERIOD = 1.0f;
+    public static final float PHEROMONE_DEGRADE_RATIO = 0.99f;
+    public static final float PHEROMONE_SLEEP_INTENSITY = 0.01f;
+    public static final int TILE_SIZE = 32;
+    private static final int TILE_SIZE_SHIFT = 5;
+    static final int TILE_CELL_COUNT = TILE_SIZE * TILE_SIZE;
+    private static final int TILE_CELL_SHIFT = TILE_SIZE_SHIFT * 2;
+    static final int PHEROMONE_LAYER_COUNT = MAX_COLONY_COUNT * PHEROMONE_COUNT;
+    private static final float[] DEGRADE_FACTORS = new float[1024];
+
+    /**
+     * Wall distances are chamfer distances (3 per straight and 4 per diagonal step between
+     * cells) capped at this many cells, edits only have to recompute cells within this range
+     */
+    public static final int WALL_DISTANCE_LIMIT = 64;
+    static final int WALL_DISTANCE_LIMIT_UNITS = WALL_DISTANCE_LIMIT * 3;
+
+    // Layout of the state written by writeState, a header followed by a record for every tile
+    // that holds pheromones or terrain and then the food sources
+    private static final int STATE_HEADER_SIZE = 4 * 13;
+    private static final int STATE_RECORD_HEADER_SIZE = 4 * 3;
+    private static final int STATE_PHEROMONES_FLAG = 1;
+    private static final int STATE_TERRAIN_FLAG = 2;
+
+    static {
+        // Repeated float multiplication so lazy decay matches the eager sweep as closely as possible
+        DEGRADE_FACTORS[0] = 1f;
+        for(int i = 1; i < DEGRADE_FACTORS.length; ++i)
+            DEGRADE_FACTORS[i] = DEGRADE_FACTORS[i - 1] * PHEROMONE_DEGRADE_RATIO;
+    }
 
 
     private final int columnCount;
     private final int rowCount;
     private final float cellSize;
-    private final WorldCell[] cellsArray;
+    private final int cellCount;
+    private final int tileColumnCount;
+    private final int tileRowCount;
+    private final int[] tileVersions;
+    private final WorldStorage storage;
+    private final FoodOccupancyIndex foodIndex;
+    private final FoodClusters foodClusters;
+
+    // Active tiles are listed in the first activeTileCount elements of activeTiles
+    private final boolean[] isTileActive;
+    private final int[] activeTiles;
+    private int activeTileCount;
+    private int degradeTick;
+    private EvaporationMode evaporationMode;
     private final Cooldown pheromoneDegradeCooldown;
+    // Degrade periods passed in either evaporation mode
+    private int degradePeriodCount;
+
+    // Summed area tables of the pheromone layers of every tile, only kept while enabled. Tables are
+    // built from the values at degrade period summedAreaDegradePeriods[tile] and scaled to the current
+    // period when read, dirty tiles are listed in the first dirtySummedAreaTileCount elements
+    private boolean isSummedAreaEnabled;
+    private float[][] summedAreaTables;
+    private int[] summedAreaDegradePeriods;
+    private boolean[] isSummedAreaDirty;
+    private int[] dirtySummedAreaTiles;
+    private int dirtySummedAreaTileCount;
+    private final float[] summedAreaDegradeFactors = new float[TILE_CELL_COUNT];
+
+    // View ranges of cells by heading, only kept while enabled
+    private VisibilityCache visibilityCache;
+
+    // Region of cells whose wall changed since the wall distances were last updated
+    private boolean isWallDistanceDirty;
+    private int dirtyStartRow;
+    private int dirtyEndRow;
+    private int dirtyStartColumn;
+    private int dirtyEndColumn;
 
     public World(int columnCount, int rowCount, int cellSize){
-        this.rowCount = rowCount;
-        this.columnCount = columnCount;
-        this.cellSize = cellSize;
+        this(new HeapWorldStorage(columnCount, rowCount, cellSize));
+    }
 
-        cellsArray = new WorldCell[rowCount * columnCount];
+    /**
+     * Constructor that creates a world on top of a storage, a storage that already holds a world
+     * is picked up where it was left
+     *
+     * @param storage storage of the cell data
+     */
+    public World(WorldStorage storage){
+        this.storage = storage;
+        columnCount = storage.getColumnCount();
+        rowCount = storage.getRowCount();
+        cellSize = storage.getCellSize();
+
+        cellCount = rowCount * columnCount;
+
+        tileColumnCount = (columnCount + TILE_SIZE - 1) >> TILE_SIZE_SHIFT;
+        tileRowCount = (rowCount + TILE_SIZE - 1) >> TILE_SIZE_SHIFT;
+        int tileCount = tileColumnCount * tileRowCount;
+        tileVersions = new int[tileCount];
+        isTileActive = new boolean[tileCount];
+        activeTiles = new int[tileCount];
+        evaporationMode = EvaporationMode.LAZY;
 
         pheromoneDegradeCooldown = new Cooldown(PHEROMONE_DEGRADE_PERIOD);
+        foodIndex = new FoodOccupancyIndex(this);
+        foodClusters = new FoodClusters(this, tileCount);
+
+        if(storage.isInitialized()){
+            rebuildFoodIndex();
+            rebuildFoodClusters();
+            degradeTick = storage.getDegradeTick();
+            for(int i = 0; i < tileCount; ++i)
+                if(storage.getTileMaxIntensity(i) > 0f){
+                    isTileActive[i] = true;
+                    activeTiles[activeTileCount++] = i;
+                }
 
-        for(int i = 0; i < rowCount * columnCount; ++i){
-            int row = i / columnCount;
-            int column = i % columnCount;
+            // Storage was closed in the middle of an edit
+            if(!storage.isWallDistanceValid()){
+                updateWallDistances(0, rowCount, 0, columnCount);
+                storage.setWallDistanceValid(true);
+            }
+            return;
+        }
 
-            cellsArray[i] = new WorldCell(row, column, cellSize);
+        // Create wall border around whole world
+        for(int row = 0; row < rowCount; ++row){
+            for(int column = 0; column < columnCount; ++column){
+                if(row > 1 && row < rowCount - 2 && column == 2)
+                    column = Math.max(column, columnCount - 2);
 
-            // Create wall border around whole world
-            if(row == 0 || row == 1 || row == rowCount - 1 || row == rowCount - 2 ||
-                    column == 0 || column == 1 || column == columnCount - 1 || column == columnCount - 2)
-                cellsArray[i].setWall(true);
+                setWall(getCellIndex(row, column), true);
+            }
         }
+
+        // Only cells close to the border are nearer to a wall than the limit
+        int borderSize = 2 + WALL_DISTANCE_LIMIT;
+        updateWallDistances(0, Math.min(rowCount, borderSize), 0, columnCount);
+        updateWallDistances(Math.max(0, rowCount - borderSize), rowCount, 0, columnCount);
+        updateWallDistances(0, rowCount, 0, Math.min(columnCount, borderSize));
+        updateWallDistances(0, rowCount, Math.max(0, columnCount - borderSize), columnCount);
+        isWallDistanceDirty = false;
+        storage.setWallDistanceValid(true);
+        storage.setInitialized(true);
+    }
+
+    static int getTileCount(int columnCount, int rowCount){
+        return ((columnCount + TILE_SIZE - 1) >> TILE_SIZE_SHIFT) * ((rowCount + TILE_SIZE - 1) >> TILE_SIZE_SHIFT);
     }
 
     public void update(float deltaTime){
+        updateWallDistances();
+
         pheromoneDegradeCooldown.update(deltaTime);
 
-        if(pheromoneDegradeCooldown.isReadyAutoReset())
-            for (int i = 0; i < rowCount * columnCount; ++i)
-                cellsArray[i].degradeAllPheromonesOnCell(0.99f);
+        if(!pheromoneDegradeCooldown.isReadyAutoReset())
+            return;
+        ++degradePeriodCount;
+
+        // Lazy mode only counts degrade periods, cells catch up when they are next accessed
+        if(evaporationMode == EvaporationMode.LAZY)
+            storage.setDegradeTick(++degradeTick);
+
+        for(int i = activeTileCount - 1; i >= 0; --i){
+            int tileIndex = activeTiles[i];
+
+            if(evaporationMode == EvaporationMode.EAGER)
+                degradeTile(tileIndex, PHEROMONE_DEGRADE_RATIO);
+
+            ++tileVersions[tileIndex];
+            float maxIntensity = storage.getTileMaxIntensity(tileIndex) * PHEROMONE_DEGRADE_RATIO;
+            storage.setTileMaxIntensity(tileIndex, maxIntensity);
+            if(maxIntensity < PHEROMONE_SLEEP_INTENSITY)
+                deactivateTile(i);
+        }
+    }
+
+    /**
+     * Method that multiplies every pheromone in a tile, in lazy mode the pending degrade of the
+     * cells is applied first
+     *
+     * @param tileIndex index of the tile
+     * @param ratio ratio to multiply the pheromones with
+     */
+    private void degradeTile(int tileIndex, float ratio){
+        if(evaporationMode == EvaporationMode.LAZY)
+            for(int i = 0; i < TILE_CELL_COUNT; ++i)
+                applyPendingDegrade(tileIndex, i);
+
+        storage.scalePheromones(tileIndex, ratio);
+    }
+
+    private void activateTile(int tileIndex){
+        isTileActive[tileIndex] = true;
+        activeTiles[activeTileCount++] = tileIndex;
+
+        storage.allocatePheromones(tileIndex, degradeTick);
+        markSummedAreaDirty(tileIndex);
+    }
+
+    private void deactivateTile(int activeIndex){
+        int tileIndex = activeTiles[activeIndex];
+        isTileActive[tileIndex] = false;
+        activeTiles[activeIndex] = activeTiles[--activeTileCount];
+
+        storage.setTileMaxIntensity(tileIndex, 0f);
+        storage.releasePheromones(tileIndex);
     }
 
-    public Collision getFirstCollision(Point2D.Float position, float directionAngle, float targetDistance){
-        Collision collision = new Collision(targetDistance);
+    /**
+     * Method that casts a ray until it hits a wall or reaches the target distance
+     *
+     * @param positionX x coordinate of the ray origin
+     * @param positionY y coordinate of the ray origin
+     * @param directionAngle angle of the ray
+     * @param targetDistance max distance the ray travels
+     * @param collision reused collision the result is written into
+     * @return the passed collision
+     */
+    public Collision getFirstCollision(float positionX, float positionY, float directionAngle, float targetDistance,
+                                       Collision collision){
+        return getFirstCollision(positionX, positionY, (float) Math.cos(directionAngle), (float) Math.sin(directionAngle),
+                targetDistance, collision);
+    }
+
+    /**
+     * Method that casts a ray until it hits a wall or reaches the target distance, for callers
+     * that already know the direction vector
+     *
+     * @param positionX x coordinate of the ray origin
+     * @param positionY y coordinate of the ray origin
+     * @param directionX x component of the unit direction of the ray
+     * @param directionY y component of the unit direction of the ray
+     * @param targetDistance max distance the ray travels
+     * @param collision reused collision the result is written into
+     * @return the passed collision
+     */
+    public Collision getFirstCollision(float positionX, float positionY, float directionX, float directionY,
+                                       float targetDistance, Collision collision){
+        collision.setMiss(targetDistance);
+
+        // Skip ahead through open space using the wall distances, walk the last cells one by one.
+        // The walk can report a hit up to one diagonal cell past the target distance, so only
+        // stop early when that is clear too
+        float skippedDistance = 0f;
+        float overshootDistance = targetDistance + 1.5f * cellSize;
+        if(!isWallDistanceDirty) {
+            while (true) {
+                float x = positionX + directionX * skippedDistance;
+                float y = positionY + directionY * skippedDistance;
+                if (isPointOutOfBounds(x, y))
+                    break;
+
+                float clearance = getWallClearance(getCellIndex(x, y));
+                if (skippedDistance + clearance >= overshootDistance)
+                    return collision;
+                if (clearance < cellSize)
+                    break;
+
+                skippedDistance += clearance;
+            }
+            positionX += directionX * skippedDistance;
+            positionY += directionY * skippedDistance;
+        }
 
-        int column = (int) (position.x  / cellSize);
-        int row = (int) (position.y / cellSize);
-        Vector2 directionVector = new Vector2((float) Math.cos(directionAngle), (float) Math.sin(directionAngle));
+        int column = (int) (positionX  / cellSize);
+        int row = (int) (positionY / cellSize);
 
-        Vector2 stepVector =
-                new Vector2(directionVector.x > 0f ? 1f : -1f , directionVector.y > 0f ? 1f : -1f);
+        int stepX = directionX > 0f ? 1 : -1;
+        int stepY = directionY > 0f ? 1 : -1;
 
-        float distanceVertical =
-                ((column + (stepVector.x > 0f ? 1f : 0f)) * cellSize - position.x) / directionVector.x;
-        float distanceHorizontal =
-                ((row + (stepVector.y > 0f ? 1f : 0f)) * cellSize - position.y) / directionVector.y;
+        // A ray parallel to an axis never crosses the borders along it
+        float distanceVertical = directionX == 0f ? Float.POSITIVE_INFINITY :
+                ((column + (stepX > 0 ? 1f : 0f)) * cellSize - positionX) / directionX;
+        float distanceHorizontal = directionY == 0f ? Float.POSITIVE_INFINITY :
+                ((row + (stepY > 0 ? 1f : 0f)) * cellSize - positionY) / directionY;
 
-        float deltaX = Math.abs(cellSize / directionVector.x);
-        float deltaY = Math.abs(cellSize / directionVector.y);
-        float distance = 0f;
+        float deltaX = Math.abs(cellSize / directionX);
+        float deltaY = Math.abs(cellSize / directionY);
+        distanceVertical += skippedDistance;
+        distanceHorizontal += skippedDistance;
 
+        // Continue as if walking from the origin, from the last cell border before the skipped point
+        float distance = Math.max(
+                directionX == 0f ? Float.NEGATIVE_INFINITY : distanceVertical - deltaX,
+                directionY == 0f ? Float.NEGATIVE_INFINITY : distanceHorizontal - deltaY
+        );
         while(distance < targetDistance){
             boolean isDistanceVerticalSmaller = distanceVertical < distanceHorizontal;
 
             distance = isDistanceVerticalSmaller ? distanceVertical : distanceHorizontal;
             distanceVertical += isDistanceVerticalSmaller ? deltaX : 0f;
             distanceHorizontal += isDistanceVerticalSmaller ? 0f : deltaY;
-            column += isDistanceVerticalSmaller ? stepVector.x : 0;
-            row += isDistanceVerticalSmaller ? 0 : stepVector.y;
+            column += isDistanceVerticalSmaller ? stepX : 0;
+            row += isDistanceVerticalSmaller ? 0 : stepY;
 
-            if(checkCell(row, column) || getCell(row, column).isWall()){
-                collision.setDistance(distance);
-                collision.setNormalVector(new Vector2(
+            if(checkCell(row, column) || isWall(getCellIndex(row, column))){
+                collision.setWallHit(
+                        distance,
                         isDistanceVerticalSmaller ? 1f : 0f,
-                        !isDistanceVerticalSmaller ? 1f : 0f));
+                        !isDistanceVerticalSmaller ? 1f : 0f
+                );
                 break;
             }
         }
@@ -92,20 +329,145 @@ public class World {
 
     }
 
+    /**
+     * Method that casts a batch of rays from one point, with the same results as casting each of
+     * them with getFirstCollision. The open space around the point is looked up once for all
+     * rays and walls are tested a word of the wall bitmap at a time, rays cross the two tile rows
+     * of a word without walls without looking at their cells
+     *
+     * @param positionX x coordinate of the ray origin
+     * @param positionY y coordinate of the ray origin
+     * @param directionsX x components of the unit directions of the rays
+     * @param directionsY y components of the unit directions of the rays
+     * @param rayCount number of rays
+     * @param targetDistance max distance the rays travel
+     * @param distances distance every ray travelled, the target distance if it hit nothing
+     * @param normalAxes normal axis of the wall every ray hit, NO_HIT, NORMAL_X or NORMAL_Y of Collision
+     */
+    public void castRays(float positionX, float positionY, float[] directionsX, float[] directionsY, int rayCount,
+                         float targetDistance, float[] distances, byte[] normalAxes){
+        // Rays stop skipping at once where the wall distances can't be used
+        float originClearance = 0f;
+        if(!isWallDistanceDirty && !isPointOutOfBounds(positionX, positionY))
+            originClearance = getWallClearance(getCellIndex(positionX, positionY));
+
+        for(int i = 0; i < rayCount; ++i)
+            castRay(positionX, positionY, directionsX[i], directionsY[i], targetDistance, originClearance,
+                    distances, normalAxes, i);
+    }
+
+    private void castRay(float positionX, float positionY, float directionX, float directionY, float targetDistance,
+                         float originClearance, float[] distances, byte[] normalAxes, int i){
+        distances[i] = targetDistance;
+        normalAxes[i] = Collision.NO_HIT;
+
+        // Same skip through open space as getFirstCollision, starting from the shared clearance
+        float skippedDistance = 0f;
+        float overshootDistance = targetDistance + 1.5f * cellSize;
+        float clearance = originClearance;
+        while(true){
+            if(skippedDistance + clearance >= overshootDistance)
+                return;
+            if(clearance < cellSize)
+                break;
+
+            skippedDistance += clearance;
+            float x = positionX + directionX * skippedDistance;
+            float y = positionY + directionY * skippedDistance;
+            if(isPointOutOfBounds(x, y))
+                break;
+            clearance = getWallClearance(getCellIndex(x, y));
+        }
+        positionX += directionX * skippedDistance;
+        positionY += directionY * skippedDistance;
+
+        int column = (int) (positionX  / cellSize);
+        int row = (int) (positionY / cellSize);
+
+        int stepX = directionX > 0f ? 1 : -1;
+        int stepY = directionY > 0f ? 1 : -1;
+
+        // A ray parallel to an axis never crosses the borders along it
+        float distanceVertical = directionX == 0f ? Float.POSITIVE_INFINITY :
+                ((column + (stepX > 0 ? 1f : 0f)) * cellSize - positionX) / directionX;
+        float distanceHorizontal = directionY == 0f ? Float.POSITIVE_INFINITY :
+                ((row + (stepY > 0 ? 1f : 0f)) * cellSize - positionY) / directionY;
+
+        float deltaX = Math.abs(cellSize / directionX);
+        float deltaY = Math.abs(cellSize / directionY);
+        distanceVertical += skippedDistance;
+        distanceHorizontal += skippedDistance;
+
+        // Word of the wall bitmap the ray is in, the tile local index of a cell divided by 64
+        int wordCellIndex = -1;
+        long wallWord = 0L;
+
+        float distance = Math.max(
+                directionX == 0f ? Float.NEGATIVE_INFINITY : distanceVertical - deltaX,
+                directionY == 0f ? Float.NEGATIVE_INFINITY : distanceHorizontal - deltaY
+        );
+        while(distance < targetDistance){
+            boolean isDistanceVerticalSmaller = distanceVertical < distanceHorizontal;
+
+            distance = isDistanceVerticalSmaller ? distanceVertical : distanceHorizontal;
+            distanceVertical += isDistanceVerticalSmaller ? deltaX : 0f;
+            distanceHorizontal += isDistanceVerticalSmaller ? 0f : deltaY;
+            column += isDistanceVerticalSmaller ? stepX : 0;
+            row += isDistanceVerticalSmaller ? 0 : stepY;
+
+            boolean isHit = checkCell(row, column);
+            if(!isHit){
+                int cellIndex = getCellIndex(row, column);
+                if(cellIndex >>> 6 != wordCellIndex){
+                    wordCellIndex = cellIndex >>> 6;
+                    wallWord = storage.getWallWord(cellIndex >>> TILE_CELL_SHIFT, wordCellIndex & (TILE_CELL_COUNT / 64 - 1));
+                }
+                isHit = (wallWord & 1L << cellIndex) != 0L;
+            }
+
+            if(isHit){
+                distances[i] = distance;
+                normalAxes[i] = isDistanceVerticalSmaller ? Collision.NORMAL_X : Collision.NORMAL_Y;
+                return;
+            }
+            if(wallWord != 0L)
+                continue;
+
+            // Walk through the cells of the empty word, stopping before the step that leaves them
+            int startColumn = column & ~(TILE_SIZE - 1);
+            int endColumn = Math.min(startColumn + TILE_SIZE, columnCount);
+            int startRow = row & ~1;
+            int endRow = Math.min(startRow + 2, rowCount);
+            while(distance < targetDistance){
+                isDistanceVerticalSmaller = distanceVertical < distanceHorizontal;
+                int nextColumn = column + (isDistanceVerticalSmaller ? stepX : 0);
+                int nextRow = row + (isDistanceVerticalSmaller ? 0 : stepY);
+                if(nextColumn < startColumn || nextColumn >= endColumn || nextRow < startRow || nextRow >= endRow)
+                    break;
+
+                distance = isDistanceVerticalSmaller ? distanceVertical : distanceHorizontal;
+                distanceVertical += isDistanceVerticalSmaller ? deltaX : 0f;
+                distanceHorizontal += isDistanceVerticalSmaller ? 0f : deltaY;
+                column = nextColumn;
+                row = nextRow;
+            }
+        }
+    }
+
     public void setPheromone(Point2D.Float point, AntPheromone pheromone, float intensity, int colonyID){
-        getCell(point).setPheromoneOnCell(pheromone, intensity, colonyID);
+        setPheromoneOnCell(getCellIndex(point), pheromone, intensity, colonyID);
     }
 
     public void degradePheromone(Point2D.Float point, float ratio){
-        getCell(point).degradeAllPheromonesOnCell(ratio);
+        degradeAllPheromonesOnCell(getCellIndex(point), ratio);
     }
 
     public int takeFood(Point2D.Float point, int amount){
-        return getCell(point).takeFoodOnCell(amount);
+        return takeFoodOnCell(getCellIndex(point), amount);
     }
 
     public boolean isFoodOnPoint(Point2D.Float point){
-        return getCell(point).isFoodOnCell();
+        return isFoodOnCell(getCellIndex(point));
     }
 
     public void setFood(Point2D.Float point, int food, float brushSize){
@@ -128,12 +490,12 @@ public class World {
                     continue;
                 }
 
-                WorldCell cell = getCell(i, j);
-                if(cell.isWall()){
+                int cellIndex = getCellIndex(i, j);
+                if(isWall(cellIndex)){
                     continue;
                 }
 
-                cell.setFoodOnCell(food);
+                setFoodOnCell(cellIndex, food);
             }
         }
 
@@ -158,12 +520,12 @@ public class World {
                     continue;
                 }
 
-                WorldCell cell = getCell(i, j);
-                if(cell.isWall()){
+                int cellIndex = getCellIndex(i, j);
+                if(isWall(cellIndex)){
                     continue;
                 }
 
-                cell.setFoodOnCell(0);
+                setFoodOnCell(cellIndex, 0);
             }
         }
 
@@ -187,12 +549,14 @@ public class World {
                 if(j < 0 || j >= columnCount){
                     continue;
                 }
-                WorldCell cell = getCell(i, j);
-                cell.setWall(true);
-                cell.removePheromones();
+                int cellIndex = getCellIndex(i, j);
+                setWall(cellIndex, true);
+                removePheromonesOnCell(cellIndex);
             }
         }
 
+        updateWallDistances();
+
     }
     public void removeWall(Point2D.Float point, float brushSize){
         if(isPointOutOfBounds(point)){
@@ -213,33 +577,734 @@ public class World {
                 if(j < 0 || j >= columnCount){
                     continue;
                 }
-                WorldCell cell = getCell(i, j);
-                cell.setWall(false);
+                setWall(getCellIndex(i, j), false);
+            }
+        }
+
+        updateWallDistances();
+
+    }
+
+    public float getPheromoneOnCell(int cellIndex, AntPheromone pheromone, int colonyID){
+        int tileIndex = cellIndex >>> TILE_CELL_SHIFT;
+        int localIndex = cellIndex & (TILE_CELL_COUNT - 1);
+
+        return storage.getPheromone(tileIndex, getPheromoneLayerIndex(pheromone, colonyID) * TILE_CELL_COUNT + localIndex) *
+                getDegradeFactor(degradeTick - storage.getCellDegradeTick(tileIndex, localIndex));
+    }
+
+    public void setPheromoneOnCell(int cellIndex, AntPheromone pheromone, float intensity, int colonyID){
+        if(!isWall(cellIndex)) {
+            if (pheromone == AntPheromone.REPELLENT) {
+                intensity = MathUtils.clamp(intensity, 0f, World.MAX_REPELLENT_INTENSITY);
+            } else {
+                intensity = MathUtils.clamp(intensity, 0f, World.MAX_PHEROMONE_INTENSITY);
             }
+            int tileIndex = cellIndex >>> TILE_CELL_SHIFT;
+            int localIndex = cellIndex & (TILE_CELL_COUNT - 1);
+            if(!isTileActive[tileIndex]) {
+                if(intensity < PHEROMONE_SLEEP_INTENSITY)
+                    return;
+                activateTile(tileIndex);
+            }
+            if(intensity > storage.getTileMaxIntensity(tileIndex))
+                storage.setTileMaxIntensity(tileIndex, intensity);
+
+            applyPendingDegrade(tileIndex, localIndex);
+            int i = getPheromoneLayerIndex(pheromone, colonyID) * TILE_CELL_COUNT + localIndex;
+            if(intensity > storage.getPheromone(tileIndex, i))
+                storage.setPheromone(tileIndex, i, intensity);
+            ++tileVersions[tileIndex];
+            markSummedAreaDirty(tileIndex);
+        }
+    }
+
+    public void degradeAllPheromonesOnCell(int cellIndex, float ratio){
+        // Cells of inactive tiles hold no pheromones
+        int tileIndex = cellIndex >>> TILE_CELL_SHIFT;
+        if(!isTileActive[tileIndex])
+            return;
+
+        int localIndex = cellIndex & (TILE_CELL_COUNT - 1);
+        applyPendingDegrade(tileIndex, localIndex);
+        for(int i = localIndex; i < PHEROMONE_LAYER_COUNT * TILE_CELL_COUNT; i += TILE_CELL_COUNT)
+            storage.setPheromone(tileIndex, i, storage.getPheromone(tileIndex, i) * ratio);
+        ++tileVersions[tileIndex];
+        markSummedAreaDirty(tileIndex);
+    }
+
+    /**
+     * Method that applies the degrade periods a cell has missed since it was last written to
+     *
+     * @param tileIndex index of the tile of the cell, the tile has to be active
+     * @param localIndex index of the cell inside the tile
+     */
+    private void applyPendingDegrade(int tileIndex, int localIndex){
+        int elapsedTicks = degradeTick - storage.getCellDegradeTick(tileIndex, localIndex);
+        if(elapsedTicks == 0)
+            return;
+
+        float factor = getDegradeFactor(elapsedTicks);
+        for(int i = localIndex; i < PHEROMONE_LAYER_COUNT * TILE_CELL_COUNT; i += TILE_CELL_COUNT)
+            storage.setPheromone(tileIndex, i, storage.getPheromone(tileIndex, i) * factor);
+        storage.setCellDegradeTick(tileIndex, localIndex, degradeTick);
+    }
+
+    private static float getDegradeFactor(int elapsedTicks){
+        if(elapsedTicks < DEGRADE_FACTORS.length)
+            return DEGRADE_FACTORS[elapsedTicks];
+        return (float) Math.pow(PHEROMONE_DEGRADE_RATIO, elapsedTicks);
+    }
+
+    public EvaporationMode getEvaporationMode() {
+        return evaporationMode;
+    }
+
+    public void setEvaporationMode(EvaporationMode evaporationMode) {
+        // Bring every cell up to date so the eager sweep starts from the correct values
+        if(this.evaporationMode == EvaporationMode.LAZY)
+            for(int i = 0; i < activeTileCount; ++i)
+                degradeTile(activeTiles[i], 1f);
+
+        this.evaporationMode = evaporationMode;
+    }
+
+    public boolean isSummedAreaEnabled() {
+        return isSummedAreaEnabled;
+    }
+
+    /**
+     * Method that starts or stops keeping summed area tables of the pheromones, tables of every
+     * tile with pheromones are built on the next updateSummedAreaTables
+     *
+     * @param isSummedAreaEnabled true to keep the tables
+     */
+    public void setSummedAreaEnabled(boolean isSummedAreaEnabled) {
+        if(this.isSummedAreaEnabled == isSummedAreaEnabled)
+            return;
+
+        this.isSummedAreaEnabled = isSummedAreaEnabled;
+        if(!isSummedAreaEnabled){
+            summedAreaTables = null;
+            summedAreaDegradePeriods = null;
+            isSummedAreaDirty = null;
+            dirtySummedAreaTiles = null;
+            return;
         }
 
+        summedAreaTables = new float[tileVersions.length][];
+        summedAreaDegradePeriods = new int[tileVersions.length];
+        isSummedAreaDirty = new boolean[tileVersions.length];
+        dirtySummedAreaTiles = new int[tileVersions.length];
+        dirtySummedAreaTileCount = 0;
+        for(int i = 0; i < activeTileCount; ++i)
+            markSummedAreaDirty(activeTiles[i]);
     }
 
-    public WorldCell[] getCells() {
-        return cellsArray;
+    /**
+     * @return cache of the view ranges of cells, null while disabled
+     */
+    public VisibilityCache getVisibilityCache() {
+        return visibilityCache;
+    }
+
+    /**
+     * Method that starts or stops caching view ranges, a new cache starts empty
+     *
+     * @param isVisibilityCacheEnabled true to cache view ranges
+     * @param viewRange max distance the cached ranges reach
+     */
+    public void setVisibilityCacheEnabled(boolean isVisibilityCacheEnabled, float viewRange) {
+        if(!isVisibilityCacheEnabled)
+            visibilityCache = null;
+        else if(visibilityCache == null || visibilityCache.getViewRange() != viewRange)
+            visibilityCache = new VisibilityCache(this, viewRange);
+    }
+
+    private void markSummedAreaDirty(int tileIndex){
+        if(isSummedAreaEnabled && !isSummedAreaDirty[tileIndex]){
+            isSummedAreaDirty[tileIndex] = true;
+            dirtySummedAreaTiles[dirtySummedAreaTileCount++] = tileIndex;
+        }
+    }
+
+    /**
+     * Method that rebuilds the summed area tables of the tiles whose pheromones were changed since
+     * the last update, evaporation alone doesn't require a rebuild
+     */
+    public void updateSummedAreaTables(){
+        if(!isSummedAreaEnabled)
+            return;
+
+        for(int i = 0; i < dirtySummedAreaTileCount; ++i){
+            int tileIndex = dirtySummedAreaTiles[i];
+            isSummedAreaDirty[tileIndex] = false;
+            if(isTileActive[tileIndex])
+                buildSummedAreaTable(tileIndex);
+        }
+        dirtySummedAreaTileCount = 0;
     }
 
-    public WorldCell getCell(Point2D.Float point) {
-        return cellsArray[(int) (point.y / cellSize) * columnCount + (int) (point.x / cellSize)];
+    private void buildSummedAreaTable(int tileIndex){
+        float[] table = summedAreaTables[tileIndex];
+        if(table == null){
+            table = new float[PHEROMONE_LAYER_COUNT * TILE_CELL_COUNT];
+            summedAreaTables[tileIndex] = table;
+        }
+
+        for(int localIndex = 0; localIndex < TILE_CELL_COUNT; ++localIndex)
+            summedAreaDegradeFactors[localIndex] = getDegradeFactor(degradeTick - storage.getCellDegradeTick(tileIndex, localIndex));
+
+        // Element of a cell holds the sum of the cells above and left of it, itself included
+        for(int i = 0; i < PHEROMONE_LAYER_COUNT * TILE_CELL_COUNT; i += TILE_CELL_COUNT){
+            for(int row = 0; row < TILE_SIZE; ++row){
+                float rowSum = 0f;
+                for(int column = 0; column < TILE_SIZE; ++column){
+                    int localIndex = row << TILE_SIZE_SHIFT | column;
+                    rowSum += storage.getPheromone(tileIndex, i + localIndex) * summedAreaDegradeFactors[localIndex];
+                    table[i + localIndex] = row > 0 ? rowSum + table[i + localIndex - TILE_SIZE] : rowSum;
+                }
+            }
+        }
+        summedAreaDegradePeriods[tileIndex] = degradePeriodCount;
     }
 
-    public WorldCell getCell(int row, int column){
-        return cellsArray[row * columnCount + column];
+    /**
+     * Method that sums a pheromone over a rectangle of cells through the summed area tables, with
+     * a few lookups per tile the rectangle overlaps. Changes made after the last
+     * updateSummedAreaTables are not seen
+     *
+     * @param startRow first row of the rectangle
+     * @param startColumn first column of the rectangle
+     * @param endRow row after the last row of the rectangle
+     * @param endColumn column after the last column of the rectangle
+     * @param pheromone pheromone to sum
+     * @param colonyID colony whose pheromone to sum
+     * @return sum of the pheromone intensities, cells outside of the world count as 0
+     */
+    public float getPheromoneSum(int startRow, int startColumn, int endRow, int endColumn, AntPheromone pheromone,
+                                 int colonyID){
+        startRow = Math.max(startRow, 0);
+        startColumn = Math.max(startColumn, 0);
+        endRow = Math.min(endRow, rowCount);
+        endColumn = Math.min(endColumn, columnCount);
+        if(startRow >= endRow || startColumn >= endColumn)
+            return 0f;
+
+        int layerStart = getPheromoneLayerIndex(pheromone, colonyID) * TILE_CELL_COUNT;
+        float sum = 0f;
+        for(int tileRow = startRow >> TILE_SIZE_SHIFT; tileRow <= (endRow - 1) >> TILE_SIZE_SHIFT; ++tileRow){
+            int firstRow = Math.max(startRow - (tileRow << TILE_SIZE_SHIFT), 0);
+            int lastRow = Math.min(endRow - (tileRow << TILE_SIZE_SHIFT), TILE_SIZE) - 1;
+
+            for(int tileColumn = startColumn >> TILE_SIZE_SHIFT; tileColumn <= (endColumn - 1) >> TILE_SIZE_SHIFT; ++tileColumn){
+                int tileIndex = getTileIndex(tileRow, tileColumn);
+                float[] table = summedAreaTables[tileIndex];
+                if(!isTileActive[tileIndex] || table == null)
+                    continue;
+
+                int firstColumn = Math.max(startColumn - (tileColumn << TILE_SIZE_SHIFT), 0);
+                int lastColumn = Math.min(endColumn - (tileColumn << TILE_SIZE_SHIFT), TILE_SIZE) - 1;
+
+                float tileSum = table[layerStart + (lastRow << TILE_SIZE_SHIFT | lastColumn)];
+                if(firstRow > 0)
+                    tileSum -= table[layerStart + ((firstRow - 1) << TILE_SIZE_SHIFT | lastColumn)];
+                if(firstColumn > 0)
+                    tileSum -= table[layerStart + (lastRow << TILE_SIZE_SHIFT | firstColumn - 1)];
+                if(firstRow > 0 && firstColumn > 0)
+                    tileSum += table[layerStart + ((firstRow - 1) << TILE_SIZE_SHIFT | firstColumn - 1)];
+
+                sum += tileSum * getDegradeFactor(degradePeriodCount - summedAreaDegradePeriods[tileIndex]);
+            }
+        }
+
+        return sum;
+    }
+
+    public void removePheromonesOnCell(int cellIndex){
+        degradeAllPheromonesOnCell(cellIndex, 0f);
+    }
+
+    public int getFoodOnCell(int cellIndex) {
+        return storage.getFood(cellIndex >>> TILE_CELL_SHIFT, cellIndex & (TILE_CELL_COUNT - 1));
+    }
+
+    public void setFoodOnCell(int cellIndex, int food) {
+        int tileIndex = cellIndex >>> TILE_CELL_SHIFT;
+        int localIndex = cellIndex & (TILE_CELL_COUNT - 1);
+        int oldFood = storage.getFood(tileIndex, localIndex);
+        storage.setFood(tileIndex, localIndex, food);
+        if(oldFood > 0 != food > 0)
+            foodIndex.addCell(getCellRow(cellIndex), getCellColumn(cellIndex), oldFood > 0 ? -1 : 1);
+        foodClusters.setFood(cellIndex, oldFood, food);
+        ++tileVersions[tileIndex];
+    }
+
+    /**
+     * Method that gets how much food is left in the food source of a cell
+     *
+     * @param cellIndex index of the cell
+     * @return food left in all cells connected to the cell, 0 if the cell never had food
+     */
+    public int getFoodLeftInSource(int cellIndex){
+        int cluster = foodClusters.getCluster(cellIndex);
+        return cluster == -1 ? 0 : foodClusters.getFoodLeft(cluster);
+    }
+
+    public FoodClusters getFoodClusters(){
+        return foodClusters;
+    }
+
+    /**
+     * Method that finds the closest cell with food an ant can see, food hidden behind a wall is
+     * passed over for food farther away that is in sight
+     *
+     * @param x x coordinate of the point
+     * @param y y coordinate of the point
+     * @param directionAngle angle of the middle of the view cone
+     * @param fieldOfView angle of the whole view cone
+     * @param range max distance from the point
+     * @return index of the closest cell with food or -1 if there is none
+     */
+    public int findNearestFood(float x, float y, float directionAngle, float fieldOfView, float range){
+        return foodIndex.findNearest(
+                x / cellSize, y / cellSize,
+                (float) Math.cos(directionAngle), (float) Math.sin(directionAngle),
+                (float) Math.cos(fieldOfView / 2f),
+                range / cellSize
+        );
+    }
+
+    /**
+     * @return number of cells with food in the world
+     */
+    public int getFoodCellCount(){
+        return foodIndex.getFoodCellCount();
+    }
+
+    /**
+     * Method that rebuilds the food index from the food in the storage
+     */
+    private void rebuildFoodIndex(){
+        foodIndex.clear();
+        for(int tileIndex = 0; tileIndex < tileVersions.length; ++tileIndex){
+            if(!storage.isTileAllocated(tileIndex))
+                continue;
+
+            for(int localIndex = 0; localIndex < TILE_CELL_COUNT; ++localIndex){
+                int cellIndex = tileIndex << TILE_CELL_SHIFT | localIndex;
+                if(storage.getFood(tileIndex, localIndex) > 0)
+                    foodIndex.addCell(getCellRow(cellIndex), getCellColumn(cellIndex), 1);
+            }
+        }
+    }
+
+    /**
+     * Method that rebuilds the food sources from the food in the storage, used for storage files
+     * that don't keep the sources. History of the sources is lost, emptied cells no longer
+     * belong to a source and all food left counts as placed now
+     */
+    private void rebuildFoodClusters(){
+        foodClusters.clear();
+        for(int tileIndex = 0; tileIndex < tileVersions.length; ++tileIndex){
+            if(!storage.isTileAllocated(tileIndex))
+                continue;
+
+            for(int localIndex = 0; localIndex < TILE_CELL_COUNT; ++localIndex){
+                int food = storage.getFood(tileIndex, localIndex);
+                if(food > 0)
+                    foodClusters.setFood(tileIndex << TILE_CELL_SHIFT | localIndex, 0, food);
+            }
+        }
+    }
+
+    public int takeFoodOnCell(int cellIndex, int amount){
+        int foodOnCell = getFoodOnCell(cellIndex);
+        if(amount > foodOnCell)
+            amount = foodOnCell;
+
+        setFoodOnCell(cellIndex, foodOnCell - amount);
+
+        return amount;
+    }
+
+    public boolean isFoodOnCell(int cellIndex){
+        return getFoodOnCell(cellIndex) > 0;
+    }
+
+    public boolean isWall(int cellIndex) {
+        return (storage.getWallWord(cellIndex >>> TILE_CELL_SHIFT, (cellIndex >>> 6) & (TILE_CELL_COUNT / 64 - 1)) &
+                (1L << cellIndex)) != 0L;
+    }
+
+    public void setWall(int cellIndex, boolean wall) {
+        if(isWall(cellIndex) == wall)
+            return;
+
+        int tileIndex = cellIndex >>> TILE_CELL_SHIFT;
+        int wordIndex = (cellIndex >>> 6) & (TILE_CELL_COUNT / 64 - 1);
+        storage.setWallWord(tileIndex, wordIndex, storage.getWallWord(tileIndex, wordIndex) ^ 1L << cellIndex);
+
+        markWallDistanceDirty(getCellRow(cellIndex), getCellColumn(cellIndex));
+        if(visibilityCache != null)
+            visibilityCache.invalidate(getCellRow(cellIndex), getCellColumn(cellIndex));
+        ++tileVersions[tileIndex];
+    }
+
+    /**
+     * @return true if walls changed since the wall distances were last updated, rays don't skip
+     * through open space until they are
+     */
+    boolean isWallDistanceDirty(){
+        return isWallDistanceDirty;
+    }
+
+    /**
+     * Method that gets a counter that changes whenever a cell in the tile changes, including
+     * every pheromone degrade period while the tile is active, so views of the world know
+     * which tiles to refresh
+     *
+     * @param tileIndex index of the tile
+     * @return version of the tile
+     */
+    public int getTileVersion(int tileIndex){
+        return tileVersions[tileIndex];
+    }
+
+    public int getTileIndex(int cellIndex){
+        return cellIndex >>> TILE_CELL_SHIFT;
+    }
+
+    public int getTileIndex(int tileRow, int tileColumn){
+        return tileRow * tileColumnCount + tileColumn;
+    }
+
+    public boolean isTileActive(int tileIndex){
+        return isTileActive[tileIndex];
+    }
+
+    public int getActiveTileCount() {
+        return activeTileCount;
+    }
+
+    public int getTileColumnCount() {
+        return tileColumnCount;
+    }
+
+    public int getTileRowCount() {
+        return tileRowCount;
+    }
+
+    /**
+     * Method that gets the number of tiles the storage holds any data for
+     *
+     * @return number of tiles that aren't blank
+     */
+    public int getAllocatedTileCount(){
+        int allocatedTileCount = 0;
+        for(int i = 0; i < tileVersions.length; ++i)
+            if(storage.isTileAllocated(i))
+                ++allocatedTileCount;
+
+        return allocatedTileCount;
+    }
+
+    /**
+     * Method that writes the state of the world to the file of its storage, if it has one
+     */
+    public void flush(){
+        storage.flush();
+    }
+
+    /**
+     * Method that flushes and releases the storage of the world, the world can't be used afterwards
+     */
+    public void close(){
+        storage.close();
+    }
+
+    /**
+     * Method that returns how far a point in a cell can move in any direction without entering
+     * a wall, the value is conservative and capped by WALL_DISTANCE_LIMIT
+     *
+     * @param cellIndex index of the cell
+     * @return free distance in world units, can be negative next to walls
+     */
+    public float getWallClearance(int cellIndex){
+        // Chamfer distances overestimate by up to ~6% and are measured between cell centers
+        int wallDistance = storage.getWallDistance(cellIndex >>> TILE_CELL_SHIFT, cellIndex & (TILE_CELL_COUNT - 1));
+        return (wallDistance / 3f * 0.94f - 1.5f) * cellSize;
+    }
+
+    private void markWallDistanceDirty(int row, int column){
+        if(!isWallDistanceDirty){
+            isWallDistanceDirty = true;
+            storage.setWallDistanceValid(false);
+            dirtyStartRow = row;
+            dirtyEndRow = row + 1;
+            dirtyStartColumn = column;
+            dirtyEndColumn = column + 1;
+            return;
+        }
+
+        dirtyStartRow = Math.min(dirtyStartRow, row);
+        dirtyEndRow = Math.max(dirtyEndRow, row + 1);
+        dirtyStartColumn = Math.min(dirtyStartColumn, column);
+        dirtyEndColumn = Math.max(dirtyEndColumn, column + 1);
+    }
+
+    /**
+     * Method that recomputes the wall distances around cells whose wall changed, until it is
+     * called raycasts ignore the wall distances
+     */
+    public void updateWallDistances(){
+        if(!isWallDistanceDirty)
+            return;
+
+        // Cells further than the limit from every changed cell keep their capped distance
+        updateWallDistances(
+                Math.max(0, dirtyStartRow - WALL_DISTANCE_LIMIT),
+                Math.min(rowCount, dirtyEndRow + WALL_DISTANCE_LIMIT),
+                Math.max(0, dirtyStartColumn - WALL_DISTANCE_LIMIT),
+                Math.min(columnCount, dirtyEndColumn + WALL_DISTANCE_LIMIT)
+        );
+
+        isWallDistanceDirty = false;
+        storage.setWallDistanceValid(true);
+    }
+
+    /**
+     * Method that recomputes the wall distances of a region of cells, cells around the region
+     * have to be up to date
+     *
+     * @param startRow first row of the region
+     * @param endRow row after the last one of the region
+     * @param startColumn first column of the region
+     * @param endColumn column after the last one of the region
+     */
+    private void updateWallDistances(int startRow, int endRow, int startColumn, int endColumn){
+        for(int i = startRow; i < endRow; ++i)
+            for(int j = startColumn; j < endColumn; ++j){
+                int cellIndex = getCellIndex(i, j);
+                setWallDistance(cellIndex, isWall(cellIndex) ? 0 : WALL_DISTANCE_LIMIT_UNITS);
+            }
+
+        // Two pass chamfer transform, cells around the region act as fixed boundary values
+        for(int i = startRow; i < endRow; ++i)
+            for(int j = startColumn; j < endColumn; ++j){
+                int distance = getWallDistance(i, j);
+                if(distance == 0)
+                    continue;
+
+                distance = Math.min(distance, getWallDistance(i, j - 1) + 3);
+                distance = Math.min(distance, getWallDistance(i - 1, j - 1) + 4);
+                distance = Math.min(distance, getWallDistance(i - 1, j) + 3);
+                distance = Math.min(distance, getWallDistance(i - 1, j + 1) + 4);
+                setWallDistance(getCellIndex(i, j), distance);
+            }
+        for(int i = endRow - 1; i >= startRow; --i)
+            for(int j = endColumn - 1; j >= startColumn; --j){
+                int distance = getWallDistance(i, j);
+                if(distance == 0)
+                    continue;
+
+                distance = Math.min(distance, getWallDistance(i, j + 1) + 3);
+                distance = Math.min(distance, getWallDistance(i + 1, j + 1) + 4);
+                distance = Math.min(distance, getWallDistance(i + 1, j) + 3);
+                distance = Math.min(distance, getWallDistance(i + 1, j - 1) + 4);
+                setWallDistance(getCellIndex(i, j), distance);
+            }
+
+        // Tiles that ended up far from every wall can be freed again
+        for(int tileRow = startRow >> TILE_SIZE_SHIFT; tileRow <= (endRow - 1) >> TILE_SIZE_SHIFT; ++tileRow)
+            for(int tileColumn = startColumn >> TILE_SIZE_SHIFT; tileColumn <= (endColumn - 1) >> TILE_SIZE_SHIFT; ++tileColumn)
+                storage.compactWallDistances(getTileIndex(tileRow, tileColumn));
+    }
+
+    private int getWallDistance(int row, int column){
+        // Outside of the world counts as wall
+        if(row < 0 || row >= rowCount || column < 0 || column >= columnCount)
+            return 0;
+
+        int cellIndex = getCellIndex(row, column);
+        return storage.getWallDistance(cellIndex >>> TILE_CELL_SHIFT, cellIndex & (TILE_CELL_COUNT - 1));
+    }
+
+    private void setWallDistance(int cellIndex, int distance){
+        storage.setWallDistance(cellIndex >>> TILE_CELL_SHIFT, cellIndex & (TILE_CELL_COUNT - 1), distance);
+    }
+
+    /**
+     * Method that gets the number of bytes writeState writes for the current state of the world
+     *
+     * @return size of the state in bytes
+     */
+    public int getStateSize(){
+        int stateSize = STATE_HEADER_SIZE;
+        for(int i = 0; i < tileVersions.length; ++i){
+            int recordFlags = getStateRecordFlags(i);
+            if(recordFlags == 0)
+                continue;
+
+            stateSize += STATE_RECORD_HEADER_SIZE;
+            if((recordFlags & STATE_PHEROMONES_FLAG) != 0)
+                stateSize += WorldStorage.PHEROMONE_DATA_SIZE;
+            if((recordFlags & STATE_TERRAIN_FLAG) != 0)
+                stateSize += WorldStorage.TERRAIN_DATA_SIZE;
+        }
+
+        return stateSize + foodClusters.getStateSize();
+    }
+
+    private int getStateRecordFlags(int tileIndex){
+        int recordFlags = 0;
+        if(isTileActive[tileIndex])
+            recordFlags |= STATE_PHEROMONES_FLAG;
+        if(storage.isTileAllocated(tileIndex))
+            recordFlags |= STATE_TERRAIN_FLAG;
+
+        return recordFlags;
+    }
+
+    /**
+     * Method that writes the whole state of the world into a buffer, cell data is copied tile by
+     * tile in bulk and blank tiles are skipped. Pending degrade of lazy evaporation is written
+     * as it is and so are the food sources, so a world read back continues exactly where this
+     * one is
+     *
+     * @param buffer little endian buffer with at least getStateSize bytes remaining
+     */
+    public void writeState(ByteBuffer buffer){
+        buffer.putInt(columnCount);
+        buffer.putInt(rowCount);
+        buffer.putInt((int) cellSize);
+        buffer.putInt(evaporationMode.ordinal());
+        buffer.putInt(degradeTick);
+        buffer.putInt(degradePeriodCount);
+        buffer.putFloat(pheromoneDegradeCooldown.getCurrentValue());
+        buffer.putInt(isWallDistanceDirty ? 1 : 0);
+        buffer.putInt(dirtyStartRow);
+        buffer.putInt(dirtyEndRow);
+        buffer.putInt(dirtyStartColumn);
+        buffer.putInt(dirtyEndColumn);
+
+        int recordCountPosition = buffer.position();
+        buffer.putInt(0);
+
+        int recordCount = 0;
+        for(int i = 0; i < tileVersions.length; ++i){
+            int recordFlags = getStateRecordFlags(i);
+            if(recordFlags == 0)
+                continue;
+
+            buffer.putInt(i);
+            buffer.putInt(recordFlags);
+            buffer.putFloat(storage.getTileMaxIntensity(i));
+            if((recordFlags & STATE_PHEROMONES_FLAG) != 0)
+                storage.copyPheromonesTo(i, buffer);
+            if((recordFlags & STATE_TERRAIN_FLAG) != 0)
+                storage.copyTerrainTo(i, buffer);
+            ++recordCount;
+        }
+
+        buffer.putInt(recordCountPosition, recordCount);
+        foodClusters.writeState(buffer);
+    }
+
+    /**
+     * Method that creates a world on the heap from a state written by writeState
+     *
+     * @param buffer little endian buffer positioned at the state
+     * @return world in the written state
+     */
+    public static World readState(ByteBuffer buffer){
+        int columnCount = buffer.getInt();
+        int rowCount = buffer.getInt();
+        int cellSize = buffer.getInt();
+
+        // An initialized storage skips creating the border, every cell comes from the state
+        WorldStorage storage = new HeapWorldStorage(columnCount, rowCount, cellSize);
+        storage.setInitialized(true);
+        World world = new World(storage);
+
+        world.evaporationMode = EvaporationMode.values()[buffer.getInt()];
+        world.degradeTick = buffer.getInt();
+        storage.setDegradeTick(world.degradeTick);
+        world.degradePeriodCount = buffer.getInt();
+        world.pheromoneDegradeCooldown.setCurrentValue(buffer.getFloat());
+        world.isWallDistanceDirty = buffer.getInt() != 0;
+        storage.setWallDistanceValid(!world.isWallDistanceDirty);
+        world.dirtyStartRow = buffer.getInt();
+        world.dirtyEndRow = buffer.getInt();
+        world.dirtyStartColumn = buffer.getInt();
+        world.dirtyEndColumn = buffer.getInt();
+
+        int recordCount = buffer.getInt();
+        for(int i = 0; i < recordCount; ++i){
+            int tileIndex = buffer.getInt();
+            int recordFlags = buffer.getInt();
+            float maxIntensity = buffer.getFloat();
+
+            if((recordFlags & STATE_PHEROMONES_FLAG) != 0){
+                world.isTileActive[tileIndex] = true;
+                world.activeTiles[world.activeTileCount++] = tileIndex;
+                storage.setTileMaxIntensity(tileIndex, maxIntensity);
+                storage.copyPheromonesFrom(tileIndex, buffer);
+            }
+            if((recordFlags & STATE_TERRAIN_FLAG) != 0)
+                storage.copyTerrainFrom(tileIndex, buffer);
+        }
+        world.rebuildFoodIndex();
+        world.foodClusters.readState(buffer);
+
+        return world;
+    }
+
+    public int getCellIndex(Point2D.Float point) {
+        return getCellIndex(point.x, point.y);
+    }
+
+    public int getCellIndex(float x, float y) {
+        return getCellIndex((int) (y / cellSize), (int) (x / cellSize));
+    }
+
+    /**
+     * Method that gets the index of a cell, cells of a tile have consecutive indices
+     *
+     * @param row row of the cell
+     * @param column column of the cell
+     * @return index of the cell
+     */
+    public int getCellIndex(int row, int column){
+        int tileIndex = (row >> TILE_SIZE_SHIFT) * tileColumnCount + (column >> TILE_SIZE_SHIFT);
+        return tileIndex << TILE_CELL_SHIFT | (row & (TILE_SIZE - 1)) << TILE_SIZE_SHIFT | column & (TILE_SIZE - 1);
+    }
+
+    public int getCellRow(int cellIndex){
+        return ((cellIndex >>> TILE_CELL_SHIFT) / tileColumnCount) << TILE_SIZE_SHIFT |
+                (cellIndex >>> TILE_SIZE_SHIFT) & (TILE_SIZE - 1);
+    }
+
+    public int getCellColumn(int cellIndex){
+        return ((cellIndex >>> TILE_CELL_SHIFT) % tileColumnCount) << TILE_SIZE_SHIFT |
+                cellIndex & (TILE_SIZE - 1);
     }
 
     public boolean checkCell(int row, int column){
-        int index = row * columnCount + column;
-        return index < 0 || index >= rowCount * columnCount;
+        return row < 0 || row >= rowCount || column < 0 || column >= columnCount;
     }
 
     public boolean isPointOutOfBounds(Point2D.Float point){
-        return point.x < 0f || point.x >= columnCount * cellSize ||
-                point.y < 0f || point.y >= rowCount * cellSize;
+        return isPointOutOfBounds(point.x, point.y);
+    }
+
+    public boolean isPointOutOfBounds(float x, float y){
+        return x < 0f || x >= columnCount * cellSize ||
+                y < 0f || y >= rowCount * cellSize;
+    }
+
+    private static int getPheromoneLayerIndex(AntPheromone pheromone, int colonyID){
+        return colonyID * PHEROMONE_COUNT + pheromone.ordinal();
     }
 
     public int getColumnCount() {
@@ -250,6 +1315,20 @@ public class World {
         return rowCount;
     }
 
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * Method that gets the upper bound of cell indices, tiles on the right and top edge have
+     * indices for cells outside of the world when the size isn't a multiple of TILE_SIZE
+     *
+     * @return upper bound of cell indices
+     */
+    public int getCellIndexCount() {
+        return tileVersions.length * TILE_CELL_COUNT;
+    }
+
     public float getCellSize() {
         return cellSize;
     }
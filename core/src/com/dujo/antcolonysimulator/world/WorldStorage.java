@@ -0,0 +1,163 @@
+package com.dujo.antcolonysimulator.world;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface of the backends that hold the cell data of a world. Data is addressed by tile index
+ * and an index inside the tile, pheromone values of a tile are stored one layer of
+ * World.TILE_SIZE * World.TILE_SIZE values after another. A new storage holds no walls, food or
+ * pheromones and every cell is as far from walls as the wall distance limit allows
+ */
+public interface WorldStorage {
+    int PHEROMONE_DATA_SIZE = (World.PHEROMONE_LAYER_COUNT + 1) * World.TILE_CELL_COUNT * 4;
+    int TERRAIN_DATA_SIZE = World.TILE_CELL_COUNT * 4 + World.TILE_CELL_COUNT / 8 + World.TILE_CELL_COUNT;
+
+    int getColumnCount();
+
+    int getRowCount();
+
+    int getCellSize();
+
+    /**
+     * Method that tells if the world was already set up in this storage, a reopened storage
+     * keeps its walls, food and pheromones
+     *
+     * @return true if the world was set up before
+     */
+    boolean isInitialized();
+
+    void setInitialized(boolean isInitialized);
+
+    /**
+     * @return true if the stored wall distances match the stored walls
+     */
+    boolean isWallDistanceValid();
+
+    void setWallDistanceValid(boolean isWallDistanceValid);
+
+    int getDegradeTick();
+
+    void setDegradeTick(int degradeTick);
+
+    /**
+     * Method that gets the upper bound of the pheromones in a tile, tiles with a bound of 0 hold
+     * no pheromones
+     *
+     * @param tileIndex index of the tile
+     * @return upper bound of every pheromone intensity in the tile
+     */
+    float getTileMaxIntensity(int tileIndex);
+
+    void setTileMaxIntensity(int tileIndex, float maxIntensity);
+
+    /**
+     * Method that makes room for the pheromones of a tile that held none
+     *
+     * @param tileIndex index of the tile
+     * @param degradeTick degrade tick all cells of the tile start at
+     */
+    void allocatePheromones(int tileIndex, int degradeTick);
+
+    /**
+     * Method that clears all pheromones of a tile
+     *
+     * @param tileIndex index of the tile
+     */
+    void releasePheromones(int tileIndex);
+
+    float getPheromone(int tileIndex, int valueIndex);
+
+    void setPheromone(int tileIndex, int valueIndex, float intensity);
+
+    /**
+     * Method that multiplies every pheromone value in a tile
+     *
+     * @param tileIndex index of the tile
+     * @param ratio ratio to multiply with
+     */
+    void scalePheromones(int tileIndex, float ratio);
+
+    int getCellDegradeTick(int tileIndex, int localIndex);
+
+    void setCellDegradeTick(int tileIndex, int localIndex, int degradeTick);
+
+    int getFood(int tileIndex, int localIndex);
+
+    void setFood(int tileIndex, int localIndex, int food);
+
+    /**
+     * Method that gets 64 wall bits of a tile, bit j of word i is the cell with local index
+     * i * 64 + j
+     *
+     * @param tileIndex index of the tile
+     * @param wordIndex index of the word inside the tile
+     * @return wall bits
+     */
+    long getWallWord(int tileIndex, int wordIndex);
+
+    void setWallWord(int tileIndex, int wordIndex, long wallBits);
+
+    int getWallDistance(int tileIndex, int localIndex);
+
+    void setWallDistance(int tileIndex, int localIndex, int wallDistance);
+
+    /**
+     * Method that gives a storage the chance to free the wall distances of a tile that is far
+     * from every wall
+     *
+     * @param tileIndex index of the tile
+     */
+    void compactWallDistances(int tileIndex);
+
+    /**
+     * Method that copies the pheromones of a tile followed by the degrade ticks of its cells into
+     * a little endian buffer
+     *
+     * @param tileIndex index of the tile
+     * @param target buffer with at least PHEROMONE_DATA_SIZE bytes remaining
+     */
+    void copyPheromonesTo(int tileIndex, ByteBuffer target);
+
+    /**
+     * Method that replaces the pheromones and degrade ticks of a tile with data written by
+     * copyPheromonesTo
+     *
+     * @param tileIndex index of the tile
+     * @param source buffer with at least PHEROMONE_DATA_SIZE bytes remaining
+     */
+    void copyPheromonesFrom(int tileIndex, ByteBuffer source);
+
+    /**
+     * Method that copies the food, wall words and wall distances of a tile into a little endian
+     * buffer
+     *
+     * @param tileIndex index of the tile
+     * @param target buffer with at least TERRAIN_DATA_SIZE bytes remaining
+     */
+    void copyTerrainTo(int tileIndex, ByteBuffer target);
+
+    /**
+     * Method that replaces the food, walls and wall distances of a tile with data written by
+     * copyTerrainTo
+     *
+     * @param tileIndex index of the tile
+     * @param source buffer with at least TERRAIN_DATA_SIZE bytes remaining
+     */
+    void copyTerrainFrom(int tileIndex, ByteBuffer source);
+
+    /**
+     * @param tileIndex index of the tile
+     * @return true if the storage holds any data for the tile
+     */
+    boolean isTileAllocated(int tileIndex);
+
+    /**
+     * Method that writes all changes to the backing file, if there is one
+     */
+    void flush();
+
+    /**
+     * Method that flushes and releases the storage, the world using it can't be used afterwards
+     */
+    void close();
+}
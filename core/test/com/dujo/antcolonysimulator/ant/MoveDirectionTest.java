@@ -0,0 +1,36 @@
+package com.dujo.antcolonysimulator.ant;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MoveDirectionTest {
+    private static final float[] DELTA_TIMES = {0.001f, 1f / 60f, 0.05f, 0.1f, 0.25f};
+    private static final float MAX_ERROR = 2f * (float) (Math.PI * 2.0 / MoveDirection.HEADING_STEPS);
+
+    @Test
+    public void fixedPointSteeringTurnsLikeFloatSteering(){
+        // Long frames turn by more than PI / 4 at once, which overflowed the integer product
+        for(float deltaTime : DELTA_TIMES)
+            for(int currentHeading = 0; currentHeading < MoveDirection.HEADING_STEPS; currentHeading += 61)
+                for(int targetHeading = 0; targetHeading < MoveDirection.HEADING_STEPS; targetHeading += 37){
+                    float currentAngle = MoveDirection.getAngle(currentHeading);
+                    float targetAngle = MoveDirection.getAngle(targetHeading);
+
+                    float expectedAngle = rotate(false, currentAngle, targetAngle, deltaTime);
+                    float angle = rotate(true, currentAngle, targetAngle, deltaTime);
+
+                    assertEquals(0.0, Math.IEEEremainder(angle - expectedAngle, Math.PI * 2.0), MAX_ERROR);
+                }
+    }
+
+    private static float rotate(boolean isFixedPointHeading, float currentAngle, float targetAngle, float deltaTime){
+        AntPopulation population = new AntPopulation(1);
+        population.setFixedPointHeading(isFixedPointHeading);
+        int i = population.addAnt(0f, 0f, currentAngle);
+        MoveDirection.setTargetAngle(population, i, targetAngle);
+
+        MoveDirection.rotate(population, i, deltaTime, Ant.ROTATE_SPEED);
+        return population.currentAngle[i];
+    }
+}
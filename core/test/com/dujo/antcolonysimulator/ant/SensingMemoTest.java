@@ -0,0 +1,73 @@
+package com.dujo.antcolonysimulator.ant;
+
+import com.dujo.antcolonysimulator.colony.Colony;
+import com.dujo.antcolonysimulator.simulation.SimulationEngine;
+import com.dujo.antcolonysimulator.world.TestWorlds;
+import com.dujo.antcolonysimulator.world.World;
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SensingMemoTest {
+    private static final long SEED = 2L;
+    private static final int TICK_COUNT = 1500;
+
+    @Test
+    public void memoDoesntChangeStencilSensing(){
+        SimulationEngine engine = run(SensingMode.STENCIL, false);
+        SimulationEngine memoEngine = run(SensingMode.STENCIL, true);
+
+        assertSameOutcome(engine, memoEngine);
+        assertTrue(memoEngine.getColonies().get(0).getSensingMemoHitRate() > 0f);
+    }
+
+    @Test
+    public void memoIsBypassedForSampledSensing(){
+        // Sampled sensing is randomized per ant, so it is never shared
+        SimulationEngine engine = run(SensingMode.SAMPLED, true);
+
+        for(Colony colony : engine.getColonies()){
+            assertTrue(colony.getStoredFood() > 0);
+            assertEquals(0L, colony.getSensingMemoLookupCount());
+            assertEquals(0f, colony.getSensingMemoHitRate(), 0f);
+        }
+    }
+
+    private static SimulationEngine run(SensingMode sensingMode, boolean isSensingMemoEnabled){
+        SimulationEngine engine = new SimulationEngine(TestWorlds.createClutteredWorld(200, SEED), 2, SEED);
+        engine.setSensingMode(sensingMode);
+        engine.setSensingMemoEnabled(isSensingMemoEnabled);
+        // Crowded colonies, so many ants share a cell
+        engine.addColony(new Point2D.Float(60f, 60f), Colony.ANT_MAX_CAPACITY);
+        engine.addColony(new Point2D.Float(140f, 50f), Colony.ANT_MAX_CAPACITY);
+
+        engine.step(TICK_COUNT);
+        engine.dispose();
+        return engine;
+    }
+
+    private static void assertSameOutcome(SimulationEngine expectedEngine, SimulationEngine engine){
+        for(int i = 0; i < expectedEngine.getColonies().size(); ++i){
+            Colony expectedColony = expectedEngine.getColonies().get(i);
+            Colony colony = engine.getColonies().get(i);
+            assertEquals(expectedColony.getStoredFood(), colony.getStoredFood());
+            assertTrue(colony.getStoredFood() > 0);
+
+            for(AntPheromone pheromone : AntPheromone.values())
+                assertEquals(getPheromoneTotal(expectedEngine.getWorld(), pheromone, i),
+                        getPheromoneTotal(engine.getWorld(), pheromone, i), 0.0);
+        }
+    }
+
+    private static double getPheromoneTotal(World world, AntPheromone pheromone, int colonyIndex){
+        double total = 0.0;
+        for(int row = 0; row < world.getRowCount(); ++row)
+            for(int column = 0; column < world.getColumnCount(); ++column)
+                total += world.getPheromoneOnCell(world.getCellIndex(row, column), pheromone, colonyIndex);
+
+        return total;
+    }
+}
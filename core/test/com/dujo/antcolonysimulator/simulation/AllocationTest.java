@@ -0,0 +1,42 @@
+package com.dujo.antcolonysimulator.simulation;
+
+import com.dujo.antcolonysimulator.world.TestWorlds;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+
+public class AllocationTest {
+    private static final int WARMUP_TICK_COUNT = 2000;
+    private static final int MEASURED_TICK_COUNT = 1000;
+    // Leaves room for the odd allocation of the JVM itself, sensing used to allocate kilobytes per ant per tick
+    private static final long MAX_ALLOCATED_BYTES = 1024;
+
+    @Test
+    public void steadyStateStepsDontAllocate(){
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        // Ants are stepped on this thread so all their allocations are counted. The world is small
+        // enough for the ants to have reached every tile during warmup, a tile first reached
+        // allocates its pheromones
+        SimulationEngine engine = new SimulationEngine(TestWorlds.createClutteredWorld(160, 1L), 0, 1L);
+        engine.addColony(new Point2D.Float(50f, 50f));
+        engine.step(WARMUP_TICK_COUNT);
+
+        long threadId = Thread.currentThread().getId();
+        long startBytes = allocationBean.getThreadAllocatedBytes(threadId);
+        engine.step(MEASURED_TICK_COUNT);
+        long allocatedBytes = allocationBean.getThreadAllocatedBytes(threadId) - startBytes;
+        engine.dispose();
+
+        assertTrue("Allocated " + allocatedBytes + " bytes over " + MEASURED_TICK_COUNT + " ticks",
+                allocatedBytes <= MAX_ALLOCATED_BYTES);
+    }
+}
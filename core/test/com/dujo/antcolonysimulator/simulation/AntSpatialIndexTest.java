@@ -0,0 +1,76 @@
+package com.dujo.antcolonysimulator.simulation;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.dujo.antcolonysimulator.ant.AntPopulation;
+import com.dujo.antcolonysimulator.colony.Colony;
+import com.dujo.antcolonysimulator.world.TestWorlds;
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class AntSpatialIndexTest {
+    @Test
+    public void rectangleQueryMatchesLinearScan(){
+        SimulationEngine engine = new SimulationEngine(TestWorlds.createClutteredWorld(200, 4L), 0, 4L);
+        engine.addColony(new Point2D.Float(40f, 40f));
+        engine.addColony(new Point2D.Float(160f, 120f));
+        Random random = new Random(4L);
+        IntArray result = new IntArray();
+        IntArray expected = new IntArray();
+
+        for(int round = 0; round < 5; ++round){
+            engine.step(100);
+            AntSpatialIndex antIndex = engine.getAntIndex();
+            assertEquals(getAntCount(engine), antIndex.getSize());
+
+            for(int i = 0; i < 500; ++i){
+                // Rectangles reach past the edges of the world, where ants outside of it are kept
+                float startX = random.nextFloat() * 240f - 20f;
+                float startY = random.nextFloat() * 240f - 20f;
+                float endX = startX + random.nextFloat() * 80f;
+                float endY = startY + random.nextFloat() * 80f;
+
+                antIndex.queryRectangle(startX, startY, endX, endY, result);
+                for(int j = 0; j < result.size; ++j)
+                    result.set(j, getAntKey(AntSpatialIndex.getColonyIndex(result.get(j)),
+                            AntSpatialIndex.getAntIndex(result.get(j))));
+                scanRectangle(engine, startX, startY, endX, endY, expected);
+
+                // Ants of a bucket are in colony and index order, but buckets aren't visited in that order
+                result.sort();
+                expected.sort();
+                assertEquals(expected, result);
+            }
+        }
+        engine.dispose();
+    }
+
+    private static int getAntKey(int colonyIndex, int antIndex){
+        return colonyIndex * Colony.ANT_MAX_CAPACITY + antIndex;
+    }
+
+    private static int getAntCount(SimulationEngine engine){
+        int antCount = 0;
+        for(Colony colony : engine.getColonies())
+            antCount += colony.getPopulation().getSize();
+
+        return antCount;
+    }
+
+    private static void scanRectangle(SimulationEngine engine, float startX, float startY, float endX, float endY,
+                                      IntArray result){
+        result.clear();
+        for(Colony colony : engine.getColonies()){
+            AntPopulation population = colony.getPopulation();
+            for(int i = 0; i < population.getSize(); ++i){
+                float x = population.getX(i);
+                float y = population.getY(i);
+                if(x >= startX && x <= endX && y >= startY && y <= endY)
+                    result.add(getAntKey(colony.getColonyIndex(), i));
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.dujo.antcolonysimulator.simulation;
+
+import com.dujo.antcolonysimulator.world.TestWorlds;
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class SimulationEngineTest {
+    private static final long SEED = 7L;
+    private static final int TICK_COUNT = 600;
+
+    @Test
+    public void sameSeedGivesSameStateForAnyThreadCount(){
+        ByteBuffer expected = runAndCapture(0);
+
+        assertEquals(expected, runAndCapture(1));
+        assertEquals(expected, runAndCapture(4));
+    }
+
+    private static ByteBuffer runAndCapture(int threadCount){
+        SimulationEngine engine = new SimulationEngine(TestWorlds.createClutteredWorld(200, SEED), threadCount, SEED);
+        engine.addColony(new Point2D.Float(50f, 50f));
+        engine.addColony(new Point2D.Float(150f, 60f));
+
+        try {
+            engine.step(TICK_COUNT);
+            return SimulationSnapshot.capture(engine, null);
+        } finally {
+            engine.dispose();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.dujo.antcolonysimulator.simulation;
+
+import com.dujo.antcolonysimulator.ant.SensingMode;
+import com.dujo.antcolonysimulator.world.TestWorlds;
+import com.dujo.antcolonysimulator.world.World;
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SimulationSnapshotTest {
+    @Test
+    public void loadedSimulationKeepsStateAndSettings() throws IOException {
+        SimulationEngine engine = createEngine(SensingMode.STENCIL);
+        engine.setFixedPointHeading(true);
+        engine.setVisibilityCacheEnabled(true);
+        engine.setSensingMemoEnabled(true);
+        engine.step(200);
+
+        SimulationEngine loadedEngine = saveAndLoad(engine);
+
+        assertEquals(SensingMode.STENCIL, loadedEngine.getSensingMode());
+        assertTrue(loadedEngine.isFixedPointHeading());
+        assertTrue(loadedEngine.isVisibilityCacheEnabled());
+        assertTrue(loadedEngine.isSensingMemoEnabled());
+        assertTrue(loadedEngine.getColonies().get(0).isSensingMemoEnabled());
+        assertContinuesTheSame(engine, loadedEngine);
+    }
+
+    @Test
+    public void loadedSimulationKeepsDegradePeriods() throws IOException {
+        // Summed area sums are scaled by the degrade periods passed since their tables were built
+        SimulationEngine engine = createEngine(SensingMode.SUMMED_AREA);
+        engine.step(200);
+
+        assertContinuesTheSame(engine, saveAndLoad(engine));
+    }
+
+    @Test
+    public void loadedSimulationKeepsFoodSources() throws IOException {
+        // Cells emptied by the ants still count the food left in the rest of their source
+        SimulationEngine engine = createEngine(SensingMode.STENCIL, 7L);
+        engine.step(700);
+
+        SimulationEngine loadedEngine = saveAndLoad(engine);
+
+        World world = engine.getWorld();
+        World loadedWorld = loadedEngine.getWorld();
+        int emptiedCellCount = 0;
+        for(int row = 0; row < world.getRowCount(); ++row)
+            for(int column = 0; column < world.getColumnCount(); ++column){
+                int cellIndex = world.getCellIndex(row, column);
+                if(world.getFoodLeftInSource(cellIndex) > 0 && !world.isFoodOnCell(cellIndex))
+                    ++emptiedCellCount;
+                assertEquals(world.getFoodLeftInSource(cellIndex), loadedWorld.getFoodLeftInSource(cellIndex));
+            }
+        assertTrue(emptiedCellCount > 0);
+        assertContinuesTheSame(engine, loadedEngine);
+    }
+
+    private static SimulationEngine createEngine(SensingMode sensingMode){
+        return createEngine(sensingMode, 3L);
+    }
+
+    private static SimulationEngine createEngine(SensingMode sensingMode, long seed){
+        SimulationEngine engine = new SimulationEngine(TestWorlds.createClutteredWorld(100, seed), 0, seed);
+        engine.addColony(new Point2D.Float(30f, 30f));
+        engine.setSensingMode(sensingMode);
+        return engine;
+    }
+
+    private static SimulationEngine saveAndLoad(SimulationEngine engine) throws IOException {
+        Path path = Files.createTempFile("simulation", SimulationSnapshot.FILE_EXTENSION);
+        // Loading maps the file, which keeps it from being deleted right away on some systems
+        path.toFile().deleteOnExit();
+
+        SimulationSnapshot.save(engine, path);
+        return SimulationSnapshot.load(path, 0);
+    }
+
+    private static void assertContinuesTheSame(SimulationEngine engine, SimulationEngine loadedEngine){
+        engine.step(200);
+        loadedEngine.step(200);
+        assertEquals(SimulationSnapshot.capture(engine, null), SimulationSnapshot.capture(loadedEngine, null));
+    }
+}
@@ -0,0 +1,38 @@
+package com.dujo.antcolonysimulator.world;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FoodSearchTest {
+    private static final float FIELD_OF_VIEW = (float) Math.PI;
+    private static final float RANGE = 40f;
+
+    @Test
+    public void foodBehindWallIsPassedOverForVisibleFood(){
+        World world = new World(64, 64, 1);
+        int hiddenFoodCellIndex = world.getCellIndex(20, 14);
+        int visibleFoodCellIndex = world.getCellIndex(30, 20);
+        world.setFoodOnCell(hiddenFoodCellIndex, 20);
+        world.setFoodOnCell(visibleFoodCellIndex, 20);
+
+        assertEquals(hiddenFoodCellIndex, world.findNearestFood(10.5f, 20.5f, 0f, FIELD_OF_VIEW, RANGE));
+
+        // A thin wall between the point and the closer food
+        for(int row = 18; row <= 22; ++row)
+            world.setWall(world.getCellIndex(row, 13), true);
+
+        assertEquals(visibleFoodCellIndex, world.findNearestFood(10.5f, 20.5f, 0f, FIELD_OF_VIEW, RANGE));
+    }
+
+    @Test
+    public void foodOnlyBehindWallsIsNotSeen(){
+        World world = new World(64, 64, 1);
+        for(int column = 14; column < 18; ++column)
+            world.setFoodOnCell(world.getCellIndex(20, column), 20);
+        for(int row = 10; row <= 30; ++row)
+            world.setWall(world.getCellIndex(row, 13), true);
+
+        assertEquals(-1, world.findNearestFood(10.5f, 20.5f, 0f, FIELD_OF_VIEW, RANGE));
+    }
+}
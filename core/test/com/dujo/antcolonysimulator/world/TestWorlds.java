@@ -0,0 +1,35 @@
+package com.dujo.antcolonysimulator.world;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+/**
+ * Class that builds the worlds used by the tests, maps are generated from a seed so tests don't
+ * depend on the working directory
+ */
+public final class TestWorlds {
+    private TestWorlds(){
+    }
+
+    /**
+     * Method that creates a world filled with random wall blocks and a patch of food
+     *
+     * @param size number of rows and columns
+     * @param seed seed of the wall and food placement
+     * @return created world
+     */
+    public static World createClutteredWorld(int size, long seed){
+        World world = new World(size, size, 1);
+        Random random = new Random(seed);
+
+        for(int i = 0; i < size * size / 400; ++i)
+            world.setWall(
+                    new Point2D.Float(random.nextFloat() * size, random.nextFloat() * size),
+                    2 + random.nextInt(8)
+            );
+
+        world.setFood(new Point2D.Float(size * 0.75f, size * 0.75f), 20, size / 10f);
+
+        return world;
+    }
+}
@@ -0,0 +1,62 @@
+package com.dujo.antcolonysimulator.world;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class VisibilityCacheTest {
+    private static final float VIEW_RANGE = 40f;
+    private static final int MAX_DIRECTION_COUNT = 33;
+
+    @Test
+    public void cachedRangesMatchRaycastsAfterWallChanges(){
+        Random random = new Random(1L);
+        World world = TestWorlds.createClutteredWorld(200, 1L);
+        world.setVisibilityCacheEnabled(true, VIEW_RANGE);
+
+        for(int round = 0; round < 3; ++round){
+            assertRangesMatchRaycasts(world, random);
+
+            for(int i = 0; i < 100; ++i){
+                Point2D.Float point = new Point2D.Float(random.nextFloat() * 200f, random.nextFloat() * 200f);
+                if(random.nextBoolean())
+                    world.setWall(point, 1 + random.nextInt(4));
+                else
+                    world.removeWall(point, 1 + random.nextInt(6));
+            }
+        }
+    }
+
+    private static void assertRangesMatchRaycasts(World world, Random random){
+        VisibilityCache visibilityCache = world.getVisibilityCache();
+        int[] buckets = new int[MAX_DIRECTION_COUNT];
+        float[] ranges = new float[MAX_DIRECTION_COUNT];
+        float[] directionX = new float[1];
+        float[] directionY = new float[1];
+        float[] distance = new float[1];
+        byte[] normalAxis = new byte[1];
+
+        for(int i = 0; i < 20000; ++i){
+            int row = random.nextInt(world.getRowCount());
+            int column = random.nextInt(world.getColumnCount());
+            int count = 1 + random.nextInt(MAX_DIRECTION_COUNT);
+            for(int j = 0; j < count; ++j)
+                buckets[j] = random.nextInt(VisibilityCache.HEADING_BUCKET_COUNT);
+
+            visibilityCache.getViewRanges(world.getCellIndex(row, column), buckets, count, ranges);
+
+            for(int j = 0; j < count; ++j){
+                float angle = buckets[j] * (float) (Math.PI * 2.0 / VisibilityCache.HEADING_BUCKET_COUNT);
+                directionX[0] = (float) Math.cos(angle);
+                directionY[0] = (float) Math.sin(angle);
+                world.castRays(column + 0.5f, row + 0.5f, directionX, directionY, 1, VIEW_RANGE, distance, normalAxis);
+
+                // Ranges are stored in 1 / 64 of a cell
+                assertEquals(Math.min(distance[0], VIEW_RANGE), ranges[j], 1f / 64f + 1e-4f);
+            }
+        }
+    }
+}
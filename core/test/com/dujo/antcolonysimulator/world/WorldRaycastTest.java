@@ -0,0 +1,134 @@
+package com.dujo.antcolonysimulator.world;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WorldRaycastTest {
+    private static final int MAX_RAY_COUNT = 33;
+
+    @Test
+    public void castRaysMatchesSingleRaysAndPlainWalk(){
+        for(long seed = 0; seed < 8; ++seed){
+            Random random = new Random(seed);
+            int size = 64 + random.nextInt(200);
+            World world = createRandomWorld(size, random);
+            assertSameRays(world, size, random);
+
+            // Single cell edits leave the distance field out of date, rays walk every cell until it is rebuilt
+            for(int i = 0; i < size * 2; ++i)
+                world.setWall(world.getCellIndex(random.nextInt(size), random.nextInt(size)), random.nextInt(4) != 0);
+            assertTrue(world.isWallDistanceDirty());
+            assertSameRays(world, size, random);
+        }
+    }
+
+    private static World createRandomWorld(int size, Random random){
+        World world = new World(size, size, 1);
+        int blockCount = size * size / (100 + random.nextInt(1000));
+        for(int i = 0; i < blockCount; ++i)
+            world.setWall(new Point2D.Float(random.nextFloat() * size, random.nextFloat() * size), 1 + random.nextInt(8));
+
+        return world;
+    }
+
+    private static void assertSameRays(World world, int size, Random random){
+        float[] directionsX = new float[MAX_RAY_COUNT];
+        float[] directionsY = new float[MAX_RAY_COUNT];
+        float[] distances = new float[MAX_RAY_COUNT];
+        byte[] normalAxes = new byte[MAX_RAY_COUNT];
+        Collision collision = new Collision();
+
+        for(int i = 0; i < 5000; ++i){
+            // Origins reach a little past the border and rays reach past the far side of a tile
+            float x = random.nextFloat() * (size + 20f) - 10f;
+            float y = random.nextFloat() * (size + 20f) - 10f;
+            float targetDistance = random.nextFloat() * 60f;
+            int rayCount = 1 + random.nextInt(MAX_RAY_COUNT);
+
+            for(int j = 0; j < rayCount; ++j){
+                double angle = random.nextInt(8) == 0 ? Math.PI / 2 * random.nextInt(4) : random.nextDouble() * Math.PI * 2;
+                directionsX[j] = (float) Math.cos(angle);
+                directionsY[j] = (float) Math.sin(angle);
+            }
+            world.castRays(x, y, directionsX, directionsY, rayCount, targetDistance, distances, normalAxes);
+
+            for(int j = 0; j < rayCount; ++j){
+                world.getFirstCollision(x, y, directionsX[j], directionsY[j], targetDistance, collision);
+                String ray = "ray from " + x + ", " + y + " along " + directionsX[j] + ", " + directionsY[j];
+
+                assertEquals(ray, collision.getDistance(), distances[j], 0f);
+                assertEquals(ray, getNormalAxis(collision), normalAxes[j]);
+
+                // Skipping through open space resumes the walk from a rounded point, which moves the border
+                // crossings by the rounding over the direction component. Without skipping the walks are the same
+                float tolerance = world.isWallDistanceDirty() ? 0f :
+                        1e-4f / Math.max(Math.min(Math.abs(directionsX[j]), Math.abs(directionsY[j])), 1e-2f);
+                float[] expected = walkRay(world, x, y, directionsX[j], directionsY[j], targetDistance);
+                // A ray passing a cell corner closer than that may go past either side of it, and a cell
+                // border that close to the target distance may or may not be crossed
+                if(expected[2] < tolerance)
+                    continue;
+                assertEquals(ray, expected[0], distances[j], tolerance);
+                assertEquals(ray, (byte) expected[1], normalAxes[j]);
+            }
+        }
+    }
+
+    /**
+     * Method that walks a ray cell by cell from its origin with no skipping, on a world with
+     * cells of size 1
+     *
+     * @return distance travelled, the normal axis of the wall hit and the closest the ray came to
+     * crossing two cell borders at once or a cell border at the target distance
+     */
+    private static float[] walkRay(World world, float x, float y, float directionX, float directionY, float targetDistance){
+        int column = (int) x;
+        int row = (int) y;
+        int stepX = directionX > 0f ? 1 : -1;
+        int stepY = directionY > 0f ? 1 : -1;
+        float deltaX = Math.abs(1f / directionX);
+        float deltaY = Math.abs(1f / directionY);
+        float distanceVertical = directionX == 0f ? Float.POSITIVE_INFINITY : (column + (stepX > 0 ? 1f : 0f) - x) / directionX;
+        float distanceHorizontal = directionY == 0f ? Float.POSITIVE_INFINITY : (row + (stepY > 0 ? 1f : 0f) - y) / directionY;
+
+        // Starts at the last cell border before the origin, which is behind it or on it
+        float distance = Math.max(
+                directionX == 0f ? Float.NEGATIVE_INFINITY : distanceVertical - deltaX,
+                directionY == 0f ? Float.NEGATIVE_INFINITY : distanceHorizontal - deltaY
+        );
+        float closestTieDistance = Float.POSITIVE_INFINITY;
+        while(distance < targetDistance){
+            boolean isVerticalCrossing = distanceVertical < distanceHorizontal;
+            closestTieDistance = Math.min(closestTieDistance, Math.abs(distanceVertical - distanceHorizontal));
+            if(isVerticalCrossing){
+                distance = distanceVertical;
+                distanceVertical += deltaX;
+                column += stepX;
+            }else{
+                distance = distanceHorizontal;
+                distanceHorizontal += deltaY;
+                row += stepY;
+            }
+
+            closestTieDistance = Math.min(closestTieDistance, Math.abs(distance - targetDistance));
+
+            boolean isOutside = row < 0 || row >= world.getRowCount() || column < 0 || column >= world.getColumnCount();
+            if(isOutside || world.isWall(world.getCellIndex(row, column)))
+                return new float[]{distance, isVerticalCrossing ? Collision.NORMAL_X : Collision.NORMAL_Y, closestTieDistance};
+        }
+
+        return new float[]{targetDistance, Collision.NO_HIT, closestTieDistance};
+    }
+
+    private static byte getNormalAxis(Collision collision){
+        if(!collision.isWallHit())
+            return Collision.NO_HIT;
+
+        return collision.getNormalX() != 0f ? Collision.NORMAL_X : Collision.NORMAL_Y;
+    }
+}